@@ -0,0 +1,54 @@
+package com.tahabasri.projects.notebookserver.cache;
+
+/**
+ * Snapshot of a cache usage counters
+ *
+ * @author Taha BASRI
+ *
+ */
+public class CacheStatistics {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+
+	public CacheStatistics(long hitCount, long missCount, long evictionCount, long size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return entries removed because the cache was full or they expired
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return hits ratio among all lookups, 0 if no lookup was done yet
+	 */
+	public double getHitRatio() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount="
+				+ evictionCount + ", size=" + size + "]";
+	}
+}
@@ -0,0 +1,223 @@
+package com.tahabasri.projects.notebookserver.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Thread safe in-memory cache, bounded in size (least recently used entries
+ * are evicted first) and in time (entries not accessed, or optionally not
+ * written, for a given duration expire). Entries are spread over
+ * independently locked segments so concurrent lookups of different keys
+ * rarely wait for each other
+ *
+ * @author Taha BASRI
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment<K, V>[] segments;
+	/**
+	 * Time to live of an entry after its last access (or its write) in
+	 * milliseconds, 0 or less to never expire entries
+	 */
+	private final long ttl;
+	/**
+	 * When true, time to live starts when the entry is written and is not extended
+	 * by accesses
+	 */
+	private final boolean expireAfterWrite;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize maximum entries count
+	 * @param ttl     time to live of an entry after its last access in
+	 *                milliseconds, 0 or less to never expire entries
+	 */
+	public LruCache(int maxSize, long ttl) {
+		this(maxSize, ttl, false);
+	}
+
+	/**
+	 * @param maxSize          maximum entries count
+	 * @param ttl              time to live of an entry in milliseconds, 0 or less
+	 *                         to never expire entries
+	 * @param expireAfterWrite true to count time to live from entry write, false
+	 *                         to count it from entry last access
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(int maxSize, long ttl, boolean expireAfterWrite) {
+		int segmentsCount = Math.max(1, Math.min(MAX_SEGMENTS, maxSize));
+		int segmentSize = (maxSize + segmentsCount - 1) / segmentsCount;
+		this.segments = new Segment[segmentsCount];
+		for (int i = 0; i < segmentsCount; i++) {
+			segments[i] = new Segment<>(segmentSize);
+		}
+		this.ttl = ttl;
+		this.expireAfterWrite = expireAfterWrite;
+	}
+
+	/**
+	 * gets a cached value
+	 *
+	 * @param key entry key
+	 * @return cached value, null if missing or expired
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		long now = System.currentTimeMillis();
+		synchronized (segment) {
+			CacheEntry<V> entry = segment.get(key);
+			if (entry != null) {
+				if (ttl <= 0 || now - entry.lastAccess < ttl) {
+					if (!expireAfterWrite) {
+						entry.lastAccess = now;
+					}
+					hits.increment();
+					return entry.value;
+				}
+				segment.remove(key);
+				evictions.increment();
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * gets a cached value without recording a hit or a miss, nor refreshing its
+	 * access time
+	 *
+	 * @param key entry key
+	 * @return cached value, null if missing or expired
+	 */
+	public V peek(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		long now = System.currentTimeMillis();
+		synchronized (segment) {
+			CacheEntry<V> entry = segment.get(key);
+			return entry != null && (ttl <= 0 || now - entry.lastAccess < ttl) ? entry.value : null;
+		}
+	}
+
+	/**
+	 * gets a cached value, loads and caches it on miss. The loader is called
+	 * outside of any lock, null values are not cached. A loaded value is not cached
+	 * when an entry of its segment was invalidated during the load, it may have
+	 * been read before the invalidated data was deleted
+	 *
+	 * @param key    entry key
+	 * @param loader value loader
+	 * @return cached or loaded value
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = get(key);
+		if (value == null) {
+			Segment<K, V> segment = segmentFor(key);
+			long invalidations;
+			synchronized (segment) {
+				invalidations = segment.invalidations;
+			}
+			value = loader.apply(key);
+			if (value != null) {
+				synchronized (segment) {
+					if (segment.invalidations == invalidations) {
+						segment.put(key, new CacheEntry<>(value, System.currentTimeMillis()));
+					}
+				}
+			}
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, new CacheEntry<>(value, System.currentTimeMillis()));
+		}
+	}
+
+	public void invalidate(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+			segment.invalidations++;
+		}
+	}
+
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+				segment.invalidations++;
+			}
+		}
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), size());
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[Math.abs(hash % segments.length)];
+	}
+
+	private static class CacheEntry<V> {
+		private final V value;
+		private long lastAccess;
+
+		private CacheEntry(V value, long lastAccess) {
+			this.value = value;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * Part of the cache, a map kept in access order which drops its least recently
+	 * used entry when full
+	 */
+	private class Segment<SK, SV> extends LinkedHashMap<SK, CacheEntry<SV>> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+		/**
+		 * Invalidated entries count, loads started before an invalidation do not
+		 * cache their value
+		 */
+		private long invalidations;
+
+		private Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SK, CacheEntry<SV>> eldest) {
+			if (size() > maxSize) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
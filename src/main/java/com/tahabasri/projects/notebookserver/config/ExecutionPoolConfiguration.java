@@ -0,0 +1,91 @@
+package com.tahabasri.projects.notebookserver.config;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.tahabasri.projects.notebookserver.services.interpreter.VirtualThreads;
+
+/**
+ * Dedicated thread pool running interpretation requests outside of web server
+ * threads, the pool and its queue are bounded so requests are rejected early
+ * when the server is saturated.
+ *
+ * With "execution.threads=virtual" (java 21 or later), each request runs on its
+ * own virtual thread instead : waiting for the interpreter process, pumping its
+ * output and saving the session no longer hold a platform thread, so the pool
+ * size no longer limits concurrent executions. Requests are rejected above
+ * "execution.virtual.max-concurrency" running requests. On java 21, waiting for
+ * a process (Process.waitFor) or a python worker (synchronized) pins the virtual
+ * thread to its carrier, and each request briefly needs a database connection :
+ * the default cap stays within the connection pool (100 with tomcat-jdbc
+ * defaults) and the carrier pool (at most 256 carriers)
+ *
+ * @author Taha BASRI
+ *
+ */
+@Configuration
+public class ExecutionPoolConfiguration {
+	private static final Logger logger = LogManager.getLogger(ExecutionPoolConfiguration.class);
+
+	/**
+	 * Name of the interpretation requests executor bean
+	 */
+	public static final String EXECUTION_TASK_EXECUTOR = "executionTaskExecutor";
+	/**
+	 * Execution threads mode running each request on a new virtual thread
+	 */
+	public static final String THREADS_VIRTUAL = "virtual";
+
+	@Value("${execution.pool.size:8}")
+	private int poolSize;
+
+	@Value("${execution.pool.queue-capacity:100}")
+	private int queueCapacity;
+
+	/**
+	 * Threads running requests : 'platform' (bounded pool) or 'virtual'
+	 */
+	@Value("${execution.threads:platform}")
+	private String threads;
+
+	/**
+	 * Maximum requests running at once on virtual threads
+	 */
+	@Value("${execution.virtual.max-concurrency:100}")
+	private int maxConcurrency;
+
+	@Bean(name = EXECUTION_TASK_EXECUTOR)
+	public ThreadPoolTaskExecutor executionTaskExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		ThreadFactory virtualThreads = THREADS_VIRTUAL.equals(threads) ? VirtualThreads.factory("execution-") : null;
+		if (virtualThreads != null) {
+			logger.info("Requests run on virtual threads, at most " + maxConcurrency + " at once");
+			// no queue : each request starts a new virtual thread, idle ones end right away
+			executor.setCorePoolSize(maxConcurrency);
+			executor.setMaxPoolSize(maxConcurrency);
+			executor.setQueueCapacity(0);
+			executor.setAllowCoreThreadTimeOut(true);
+			executor.setKeepAliveSeconds(1);
+			executor.setThreadFactory(virtualThreads);
+		} else {
+			if (THREADS_VIRTUAL.equals(threads)) {
+				logger.warn("Virtual threads need java 21 or later, requests run on a pool of " + poolSize
+						+ " platform threads");
+			}
+			executor.setCorePoolSize(poolSize);
+			executor.setMaxPoolSize(poolSize);
+			executor.setQueueCapacity(queueCapacity);
+			executor.setThreadNamePrefix("execution-");
+		}
+		// pending requests are dropped on shutdown, running ones are given time to end
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		executor.setAwaitTerminationSeconds(10);
+		return executor;
+	}
+}
@@ -0,0 +1,77 @@
+package com.tahabasri.projects.notebookserver.config;
+
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.services.ResultCache;
+import com.tahabasri.projects.notebookserver.services.SessionCache;
+import com.tahabasri.projects.notebookserver.services.SessionEviction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes caches usage, sessions evictions and execution pool load as metrics, next to the
+ * execution pipeline metrics. Values are read from their source when metrics
+ * are exported
+ *
+ * @author Taha BASRI
+ *
+ */
+@Configuration
+public class MetricsConfiguration {
+
+	@Bean
+	public MeterBinder cacheMetrics(SessionCache sessionCache, ResultCache resultCache) {
+		return registry -> {
+			bindCache(registry, "context", sessionCache, SessionCache::getContextStatistics);
+			bindCache(registry, "session", sessionCache, SessionCache::getSessionStatistics);
+			bindCache(registry, "result", resultCache, ResultCache::getStatistics);
+			FunctionCounter.builder("notebook.cache.coalesced", resultCache, ResultCache::getCoalescedCount)
+					.description("Requests which shared the execution of an identical request")
+					.tags("cache", "result").register(registry);
+		};
+	}
+
+	@Bean
+	public MeterBinder sessionEvictionMetrics(SessionEviction sessionEviction) {
+		return registry -> FunctionCounter
+				.builder("notebook.session.evictions", sessionEviction, SessionEviction::getEvictedCount)
+				.description("Sessions evicted as idle or least recently used").register(registry);
+	}
+
+	@Bean
+	public MeterBinder executionPoolMetrics(
+			@Qualifier(ExecutionPoolConfiguration.EXECUTION_TASK_EXECUTOR) ThreadPoolTaskExecutor executor) {
+		return registry -> {
+			Gauge.builder("notebook.execution.pool.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+					.description("Threads running requests").register(registry);
+			Gauge.builder("notebook.execution.pool.queued", executor,
+					pool -> pool.getThreadPoolExecutor().getQueue().size())
+					.description("Requests waiting for a thread").register(registry);
+		};
+	}
+
+	/**
+	 * meters only keep a weak reference to their source, so the source must be a
+	 * long lived object : the cache bean itself
+	 */
+	private static <T> void bindCache(MeterRegistry registry, String cache, T source,
+			Function<T, CacheStatistics> statistics) {
+		FunctionCounter.builder("notebook.cache.hits", source, s -> statistics.apply(s).getHitCount())
+				.tags("cache", cache).register(registry);
+		FunctionCounter.builder("notebook.cache.misses", source, s -> statistics.apply(s).getMissCount())
+				.tags("cache", cache).register(registry);
+		FunctionCounter.builder("notebook.cache.evictions", source, s -> statistics.apply(s).getEvictionCount())
+				.tags("cache", cache).register(registry);
+		Gauge.builder("notebook.cache.size", source, s -> statistics.apply(s).getSize()).tags("cache", cache)
+				.register(registry);
+	}
+}
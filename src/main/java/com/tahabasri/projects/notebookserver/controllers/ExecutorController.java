@@ -1,19 +1,36 @@
 package com.tahabasri.projects.notebookserver.controllers;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.tahabasri.projects.notebookserver.models.BatchExecutionResult;
+import com.tahabasri.projects.notebookserver.models.BatchRequestInput;
 import com.tahabasri.projects.notebookserver.models.ExecutionResult;
 import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.OutputChunk;
 import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.ExecutionService;
 import com.tahabasri.projects.notebookserver.services.InterpreterService;
 
 /**
@@ -31,6 +48,23 @@ public class ExecutorController {
      * URL is : http://IP:port<i>BASE_URL</i>
      */
     public static final String BASE_URL = "/api/v1/execute";
+    /**
+     * Asynchronous 'execute' end point suffix
+     */
+    public static final String ASYNC_URL = "/async";
+    /**
+     * Streaming 'execute' end point suffix
+     */
+    public static final String STREAM_URL = "/stream";
+    /**
+     * Batch 'execute' end point suffix
+     */
+    public static final String BATCH_URL = "/batch";
+    /**
+     * Name of the server-sent event holding the final execution result, output
+     * events are named after their stream ('stdout' or 'stderr')
+     */
+    public static final String RESULT_EVENT = "result";
 
     @Autowired
     private Environment env;
@@ -38,6 +72,16 @@ public class ExecutorController {
     @Autowired
     private InterpreterService interpreterService;
 
+    @Autowired
+    private ExecutionService executionService;
+
+    /**
+     * Maximum time an asynchronous request waits for its execution (queue time
+     * included) before answering with 503 status
+     */
+    @Value("${execution.async.timeout:30000}")
+    private long asyncTimeout;
+
     /**
      * Used to checks if the service is fully working
      *
@@ -61,23 +105,205 @@ public class ExecutorController {
      * error message otherwise
      */
     @PostMapping
-    public ExecutionResult execute(@RequestBody UserRequestInput request,
-                                   @RequestParam(required = false) String sessionId) {
+    public ResponseEntity<ExecutionResult> execute(@RequestBody UserRequestInput request,
+                                                   @RequestParam(required = false) String sessionId) {
         logger.info("Calling '/execute' endpoint ...");
 
         request.setSessionId(sessionId);
 
         InterpretationRequest interpretationRequest = interpreterService.validateAndParseInterpretationRequest(request);
 
-        ExecutionResult executionResult;
         if (interpretationRequest != null && interpretationRequest.isGoodForInterpretation()) {
-            executionResult = interpreterService.interpretRequest(interpretationRequest);
+            // stateless requests run on this thread, session requests go through their mailbox to run in order
+            try {
+                return toResponse(executionService.execute(interpretationRequest).join(), null);
+            } catch (CompletionException e) {
+                return toResponse(null, e.getCause());
+            }
         } else {
-            return new ExecutionResult(ExecutionResult.RESULT_ERROR,
-                    String.format("Couldn't parse input code, check that it matches following regex : '%s'", env.getProperty("global.request.pattern")));
+            return ResponseEntity.ok(new ExecutionResult(ExecutionResult.RESULT_ERROR,
+                    String.format("Couldn't parse input code, check that it matches following regex : '%s'", env.getProperty("global.request.pattern"))));
+        }
+    }
+
+    /**
+     * asynchronous 'execute' end point : same as 'execute' end point but the
+     * interpretation runs on the bounded execution pool, the web server thread is
+     * released while the code is executing. When the pool is saturated, the request
+     * is rejected right away with 503 status
+     *
+     * @param request   user request in the form of
+     *                  {code:{%'interpreter-name''whitespace''code''}}
+     * @param sessionId session field value if given
+     * @return deferred execution result, completed when interpretation ends
+     */
+    @PostMapping(ASYNC_URL)
+    public DeferredResult<ResponseEntity<ExecutionResult>> executeAsync(@RequestBody UserRequestInput request,
+                                                                        @RequestParam(required = false) String sessionId) {
+        logger.info("Calling '/execute/async' endpoint ...");
+
+        DeferredResult<ResponseEntity<ExecutionResult>> deferredResult = new DeferredResult<>(asyncTimeout,
+                unavailable("Execution did not complete in time, try again later"));
+
+        request.setSessionId(sessionId);
+        InterpretationRequest interpretationRequest = interpreterService.validateAndParseInterpretationRequest(request);
+
+        if (interpretationRequest == null || !interpretationRequest.isGoodForInterpretation()) {
+            deferredResult.setResult(ResponseEntity.ok(new ExecutionResult(ExecutionResult.RESULT_ERROR,
+                    String.format("Couldn't parse input code, check that it matches following regex : '%s'", env.getProperty("global.request.pattern")))));
+            return deferredResult;
+        }
+
+        executionService.submit(interpretationRequest)
+                .whenComplete((result, error) -> deferredResult.setResult(toResponse(result, error)));
+        return deferredResult;
+    }
+
+    /**
+     * streaming 'execute' end point : same as 'execute' end point but output is
+     * pushed as server-sent events while the code is executing. Each chunk is sent
+     * as a 'stdout' or 'stderr' event, the last event is a 'result' event holding
+     * the execution status (output is not repeated in it). Output is not buffered,
+     * a slow client slows down the execution instead
+     *
+     * @param request   user request in the form of
+     *                  {code:{%'interpreter-name''whitespace''code''}}
+     * @param sessionId session field value if given
+     * @return server-sent events emitter, completed when interpretation ends
+     */
+    @PostMapping(value = STREAM_URL, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter executeStream(@RequestBody UserRequestInput request,
+                                    @RequestParam(required = false) String sessionId) {
+        logger.info("Calling '/execute/stream' endpoint ...");
+
+        SseEmitter emitter = new SseEmitter(asyncTimeout);
+
+        request.setSessionId(sessionId);
+        InterpretationRequest interpretationRequest = interpreterService.validateAndParseInterpretationRequest(request);
+
+        if (interpretationRequest == null || !interpretationRequest.isGoodForInterpretation()) {
+            sendResult(emitter, new ExecutionResult(ExecutionResult.RESULT_ERROR,
+                    String.format("Couldn't parse input code, check that it matches following regex : '%s'", env.getProperty("global.request.pattern"))));
+            return emitter;
+        }
+
+        executionService.submit(interpretationRequest, (stream, chunk) -> send(emitter, stream, new OutputChunk(stream, chunk)))
+                .whenComplete((result, error) -> sendResult(emitter, toResponse(result, error).getBody()));
+        return emitter;
+    }
+
+    /**
+     * batch 'execute' end point : interprets ordered code cells of a same
+     * interpreter in one request, as a notebook "run all". Cells are written as
+     * 'execute' end point codes and run one after the other on the same
+     * interpreter process, each one seeing the state left by the previous ones. A
+     * <b>sessionId</b> field may be passed in URL, cells are then saved to the
+     * session as separate requests would be
+     *
+     * @param request   user request in the form of
+     *                  {cells:[{%'interpreter-name''whitespace''code''},...],
+     *                  stopOnError:true|false}, cells following a failed one are
+     *                  skipped unless stopOnError is false
+     * @param sessionId session field value if given
+     * @return one result by executed cell, error message if a cell can not be
+     * parsed or if cells target different interpreters
+     */
+    @PostMapping(BATCH_URL)
+    public ResponseEntity<BatchExecutionResult> executeBatch(@RequestBody BatchRequestInput request,
+                                                             @RequestParam(required = false) String sessionId) {
+        logger.info("Calling '/execute/batch' endpoint ...");
+
+        if (request.getCells() == null || request.getCells().isEmpty()) {
+            return ResponseEntity.ok(new BatchExecutionResult(ExecutionResult.RESULT_ERROR, "No cell to execute"));
+        }
+
+        List<InterpretationRequest> interpretationRequests = new ArrayList<>(request.getCells().size());
+        for (String cell : request.getCells()) {
+            InterpretationRequest interpretationRequest = interpreterService
+                    .validateAndParseInterpretationRequest(new UserRequestInput(cell, sessionId));
+            if (interpretationRequest == null || !interpretationRequest.isGoodForInterpretation()) {
+                return ResponseEntity.ok(new BatchExecutionResult(ExecutionResult.RESULT_ERROR,
+                        String.format("Couldn't parse input code of cell %d, check that it matches following regex : '%s'",
+                                interpretationRequests.size() + 1, env.getProperty("global.request.pattern"))));
+            }
+            if (!interpretationRequest.getInterpreterName().equals(interpretationRequests.isEmpty()
+                    ? interpretationRequest.getInterpreterName() : interpretationRequests.get(0).getInterpreterName())) {
+                return ResponseEntity.ok(new BatchExecutionResult(ExecutionResult.RESULT_ERROR,
+                        "All cells of a batch must use the same interpreter"));
+            }
+            interpretationRequests.add(interpretationRequest);
+        }
+
+        try {
+            return ResponseEntity.ok(new BatchExecutionResult(
+                    executionService.submitBatch(interpretationRequests, request.isStopOnError()).join()));
+        } catch (CompletionException e) {
+            ResponseEntity<ExecutionResult> response = toResponse(null, e.getCause());
+            return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                    .body(new BatchExecutionResult(ExecutionResult.RESULT_ERROR, response.getBody().getResultContent()));
+        }
+    }
+
+    /**
+     * helper method to send an event, failures (client gone, emitter timed out)
+     * are only logged as the execution can not be stopped
+     *
+     * @param emitter server-sent events emitter
+     * @param name    event name
+     * @param data    event data, sent as JSON
+     * @return true if the event was sent, false otherwise
+     */
+    private boolean send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Could not send '" + name + "' event : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * helper method to send the final execution result and close the stream
+     *
+     * @param emitter server-sent events emitter
+     * @param result  execution result
+     */
+    private void sendResult(SseEmitter emitter, ExecutionResult result) {
+        if (send(emitter, RESULT_EVENT, result)) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * helper method to convert an execution outcome to a response : rejected
+     * requests get 503 status, other failures 500 status
+     *
+     * @param result execution result, null if execution failed
+     * @param error  execution failure, null if execution completed
+     * @return response to send to the user
+     */
+    private ResponseEntity<ExecutionResult> toResponse(ExecutionResult result, Throwable error) {
+        if (error == null) {
+            return ResponseEntity.ok(result);
         }
+        if (error instanceof RejectedExecutionException) {
+            return unavailable("Server is busy, try again later");
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ExecutionResult(ExecutionResult.RESULT_ERROR, "Error executing command, : " + error.getMessage()));
+    }
 
-        return executionResult;
+    /**
+     * helper method to build a 503 response, asking the client to retry later
+     *
+     * @param message error message
+     * @return response with 503 status
+     */
+    private ResponseEntity<ExecutionResult> unavailable(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ExecutionResult(ExecutionResult.RESULT_ERROR, message));
     }
 
 }
@@ -0,0 +1,72 @@
+package com.tahabasri.projects.notebookserver.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch interpretation result to send to the final user, it contains :
+ * <ul>
+ * <li>result status : good result if all executed cells succeeded, error
+ * otherwise</li>
+ * <li>result content : error message if the batch could not be executed, empty
+ * otherwise</li>
+ * <li>results : one result by executed cell, in cells order. Cells skipped after
+ * a failure have no result</li>
+ * </ul>
+ *
+ * @author Taha BASRI
+ */
+public class BatchExecutionResult {
+
+	private String resultType;
+	private String resultContent;
+	private List<ExecutionResult> results = new ArrayList<>();
+
+	public BatchExecutionResult() {
+	}
+
+	public BatchExecutionResult(List<ExecutionResult> results) {
+		this.results = results;
+		this.resultType = ExecutionResult.RESULT_OK;
+		for (ExecutionResult result : results) {
+			if (!ExecutionResult.RESULT_OK.equals(result.getResultType())) {
+				this.resultType = ExecutionResult.RESULT_ERROR;
+			}
+		}
+	}
+
+	public BatchExecutionResult(String resultType, String resultContent) {
+		this.resultType = resultType;
+		this.resultContent = resultContent;
+	}
+
+	public String getResultType() {
+		return resultType;
+	}
+
+	public void setResultType(String resultType) {
+		this.resultType = resultType;
+	}
+
+	public String getResultContent() {
+		return resultContent;
+	}
+
+	public void setResultContent(String resultContent) {
+		this.resultContent = resultContent;
+	}
+
+	public List<ExecutionResult> getResults() {
+		return results;
+	}
+
+	public void setResults(List<ExecutionResult> results) {
+		this.results = results;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchExecutionResult [resultType=" + resultType + ", resultContent=" + resultContent + ", results="
+				+ results + "]";
+	}
+}
@@ -0,0 +1,60 @@
+package com.tahabasri.projects.notebookserver.models;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Holds a batch request information : the ordered code cells, each one written
+ * as a single request code, what to do when a cell fails and the session
+ * identifier
+ * 
+ * @author Taha BASRI
+ *
+ */
+public class BatchRequestInput {
+	private List<String> cells;
+	private boolean stopOnError = true;
+	@JsonIgnore
+	private String sessionId;
+
+	public BatchRequestInput() {
+	}
+
+	public BatchRequestInput(List<String> cells, boolean stopOnError, String sessionId) {
+		this.cells = cells;
+		this.stopOnError = stopOnError;
+		this.sessionId = sessionId;
+	}
+
+	public List<String> getCells() {
+		return cells;
+	}
+
+	public void setCells(List<String> cells) {
+		this.cells = cells;
+	}
+
+	public boolean isStopOnError() {
+		return stopOnError;
+	}
+
+	public void setStopOnError(boolean stopOnError) {
+		this.stopOnError = stopOnError;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public void setSessionId(String sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchRequestInput [cells=" + cells + ", stopOnError=" + stopOnError + ", sessionId=" + sessionId
+				+ "]";
+	}
+
+}
@@ -55,21 +55,34 @@ public class InterpretationRequest {
 	public InterpretationRequest(UserRequestInput userRequestInput) {
 		String[] requestTokens = userRequestInput.getCode().split(" ", 2);
 		if (requestTokens.length >= 2) {
-			String interpreterName = requestTokens[0].replace("%", "").trim();
-			String code = requestTokens[1].trim();
+			initialize(userRequestInput, requestTokens[0].replace("%", "").trim(), requestTokens[1].trim());
+		} else {
+			setStatus(INTERPRETATION_REQUEST_WRONG_SYNTAX);
+		}
+	}
 
-			setInterpreterName(interpreterName);
-			setCode(code);
+	/**
+	 * Initialize the request with data from user input, which code was already
+	 * validated and tokenized
+	 * 
+	 * @param userRequestInput user request as model
+	 * @param interpreterName  interpreter name parsed from user code
+	 * @param code             code parsed from user code
+	 */
+	public InterpretationRequest(UserRequestInput userRequestInput, String interpreterName, String code) {
+		initialize(userRequestInput, interpreterName, code);
+	}
 
-			if (userRequestInput.getSessionId() != null) {
-				setSessionId(userRequestInput.getSessionId());
+	private void initialize(UserRequestInput userRequestInput, String interpreterName, String code) {
+		setInterpreterName(interpreterName);
+		setCode(code);
 
-				setStatus(INTERPRETATION_REQUEST_GOOD);
-			} else {
-				setStatus(INTERPRETATION_REQUEST_NO_NEED_FOR_SESSION);
-			}
+		if (userRequestInput.getSessionId() != null) {
+			setSessionId(userRequestInput.getSessionId());
+
+			setStatus(INTERPRETATION_REQUEST_GOOD);
 		} else {
-			setStatus(INTERPRETATION_REQUEST_WRONG_SYNTAX);
+			setStatus(INTERPRETATION_REQUEST_NO_NEED_FOR_SESSION);
 		}
 	}
 
@@ -0,0 +1,41 @@
+package com.tahabasri.projects.notebookserver.models;
+
+/**
+ * Part of an execution output sent to the user while the execution is running
+ *
+ * @author Taha BASRI
+ */
+public class OutputChunk {
+
+	private String stream;
+	private String content;
+
+	public OutputChunk() {
+	}
+
+	public OutputChunk(String stream, String content) {
+		this.stream = stream;
+		this.content = content;
+	}
+
+	public String getStream() {
+		return stream;
+	}
+
+	public void setStream(String stream) {
+		this.stream = stream;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	public void setContent(String content) {
+		this.content = content;
+	}
+
+	@Override
+	public String toString() {
+		return "OutputChunk [stream=" + stream + ", content=" + content + "]";
+	}
+}
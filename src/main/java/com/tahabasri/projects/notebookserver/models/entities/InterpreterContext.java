@@ -4,6 +4,7 @@ import java.util.List;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -11,7 +12,8 @@ import javax.persistence.OneToMany;
 
 /**
  * Interpreter context, holds interpreter name, interpreter executor full path
- * and all sessions that use the given interpreter
+ * and all sessions that use the given interpreter. Sessions are loaded only when
+ * the list is read, requests look their session up by identifier instead
  * 
  * @author Taha BASRI
  *
@@ -23,7 +25,7 @@ public class InterpreterContext {
 	private Long id;
 	private String interpreterName;
 	private String interpreterPath;
-	@OneToMany(mappedBy = "context", cascade = CascadeType.ALL)
+	@OneToMany(mappedBy = "context", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
 	private List<Session> sessions;
 
 	public InterpreterContext() {
@@ -69,8 +71,9 @@ public class InterpreterContext {
 
 	@Override
 	public String toString() {
+		// sessions are left out, printing the context must not load them
 		return "InterpreterContext [id=" + id + ", interpreterName=" + interpreterName + ", interpreterPath="
-				+ interpreterPath + ", sessions=" + sessions + "]";
+				+ interpreterPath + "]";
 	}
 
 }
@@ -2,18 +2,22 @@ package com.tahabasri.projects.notebookserver.models.entities;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Transient;
 
 /**
  * User session managed by application back-end and persisted, holds the
  * identifier passed as request field (?sessionId=X), the corresponding context
  * and a list of all code lines used by the session (all expressions that does
- * not return a value to the user output)
+ * not return a value to the user output). Code lines are persisted as
+ * {@link SessionCell} rows, the list held here is their in-memory copy. The
+ * last access time is used to evict idle sessions, the state key identifies
+ * the state kept by interpreters for the session
  * 
  * @author Taha BASRI
  *
@@ -27,16 +31,31 @@ public class Session {
 	@JoinColumn
 	private InterpreterContext context;
 
-	@ElementCollection
+	@Transient
 	protected List<String> codeLines = new ArrayList<>();
 
+	/**
+	 * Last time the session was used by a request, in milliseconds since epoch
+	 */
+	private long lastAccessTime;
+
+	/**
+	 * Key of the state kept by interpreters for the session (checkpoint files),
+	 * made of the session identifier and a random nonce drawn when the session is
+	 * created. A new session reusing the identifier of a deleted one gets another
+	 * key, so it never picks up the state left by the deleted one
+	 */
+	private String stateKey;
+
 	public Session() {
 	}
 
 	public Session(Long id, InterpreterContext context, List<String> codeLines) {
 		this.id = id;
 		this.context = context;
-		this.codeLines = codeLines;
+		this.codeLines = codeLines != null ? codeLines : new ArrayList<>();
+		this.lastAccessTime = System.currentTimeMillis();
+		this.stateKey = id + "-" + UUID.randomUUID();
 	}
 
 	public Long getId() {
@@ -63,6 +82,26 @@ public class Session {
 		this.codeLines = codeLines;
 	}
 
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+
+	public void setLastAccessTime(long lastAccessTime) {
+		this.lastAccessTime = lastAccessTime;
+	}
+
+	/**
+	 * @return session state key, the session identifier for a session saved
+	 *         without one
+	 */
+	public String getStateKey() {
+		return stateKey != null ? stateKey : String.valueOf(id);
+	}
+
+	public void setStateKey(String stateKey) {
+		this.stateKey = stateKey;
+	}
+
 	@Override
 	public String toString() {
 		return "Session [id=" + id + ", codeLines=" + codeLines + "]";
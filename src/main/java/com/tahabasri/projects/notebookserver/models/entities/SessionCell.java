@@ -0,0 +1,89 @@
+package com.tahabasri.projects.notebookserver.models.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * One code line saved in a session (an expression that does not return a value
+ * to the user output), cells are only appended : storing a new cell is a single
+ * insert and a session code is read back ordered by cell index
+ * 
+ * @author Taha BASRI
+ *
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "session_id", "cell_index" }))
+public class SessionCell {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY, optional = false)
+	@JoinColumn(name = "session_id")
+	private Session session;
+
+	/**
+	 * Position of the cell in its session, starting from 0
+	 */
+	@Column(name = "cell_index")
+	private int cellIndex;
+
+	@Lob
+	private String code;
+
+	public SessionCell() {
+	}
+
+	public SessionCell(Session session, int cellIndex, String code) {
+		this.session = session;
+		this.cellIndex = cellIndex;
+		this.code = code;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Session getSession() {
+		return session;
+	}
+
+	public void setSession(Session session) {
+		this.session = session;
+	}
+
+	public int getCellIndex() {
+		return cellIndex;
+	}
+
+	public void setCellIndex(int cellIndex) {
+		this.cellIndex = cellIndex;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionCell [id=" + id + ", cellIndex=" + cellIndex + ", code=" + code + "]";
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.tahabasri.projects.notebookserver.repositories;
+
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import com.tahabasri.projects.notebookserver.models.entities.SessionCell;
+
+/**
+ * Session cells data access interface, cells are appended one by one and read
+ * back as a stream ordered by cell index
+ * 
+ * @author Taha BASRI
+ *
+ */
+public interface SessionCellRepository extends JpaRepository<SessionCell, Long> {
+
+	/**
+	 * streams the code of all cells of a session in order, must be called inside a
+	 * transaction and the stream must be closed after use
+	 * 
+	 * @param sessionId session identifier
+	 * @return cells code ordered by cell index
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "100"))
+	@Query("select c.code from SessionCell c where c.session.id = ?1 order by c.cellIndex")
+	Stream<String> streamCodeBySessionId(Long sessionId);
+
+	/**
+	 * streams the index and code of all cells of a session in order, must be
+	 * called inside a transaction and the stream must be closed after use
+	 *
+	 * @param sessionId session identifier
+	 * @return cells as [cell index, code] ordered by cell index
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "100"))
+	@Query("select c.cellIndex, c.code from SessionCell c where c.session.id = ?1 order by c.cellIndex")
+	Stream<Object[]> streamCellsBySessionId(Long sessionId);
+
+	/**
+	 * deletes all cells of a session
+	 * 
+	 * @param sessionId session identifier
+	 * @return deleted cells count
+	 */
+	@Modifying
+	@Query("delete from SessionCell c where c.session.id = ?1")
+	int deleteBySessionId(Long sessionId);
+}
@@ -1,15 +1,83 @@
 package com.tahabasri.projects.notebookserver.repositories;
 
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 import com.tahabasri.projects.notebookserver.models.entities.Session;
 
 /**
  * Session data access interface, helps in retrieving and persisting session
  * entities
- * 
+ *
  * @author Taha BASRI
  *
  */
 public interface SessionRepository extends JpaRepository<Session, Long> {
+
+	/**
+	 * gets a session by its identifier, only if it belongs to the given
+	 * interpreter. The session context is fetched by the same query
+	 *
+	 * @param sessionId       session identifier
+	 * @param interpreterName interpreter name
+	 * @return session, null if none was found for the interpreter
+	 */
+	@Query("select s from Session s join fetch s.context c where s.id = ?1 and c.interpreterName = ?2")
+	Session findByIdAndInterpreterName(Long sessionId, String interpreterName);
+
+	/**
+	 * gets sessions not accessed since the given time
+	 *
+	 * @param lastAccessTime time in milliseconds since epoch
+	 * @param pageable       page of sessions to read
+	 * @return idle sessions
+	 */
+	List<Session> findByLastAccessTimeLessThan(long lastAccessTime, Pageable pageable);
+
+	/**
+	 * gets sessions of an interpreter context, least recently used first
+	 *
+	 * @param context  interpreter context
+	 * @param pageable page of sessions to read
+	 * @return sessions ordered by last access time
+	 */
+	List<Session> findByContextOrderByLastAccessTimeAsc(InterpreterContext context, Pageable pageable);
+
+	/**
+	 * @param context interpreter context
+	 * @return all sessions of the interpreter context
+	 */
+	List<Session> findByContext(InterpreterContext context);
+
+	/**
+	 * @param context interpreter context
+	 * @return sessions count of the interpreter context
+	 */
+	long countByContext(InterpreterContext context);
+
+	/**
+	 * moves the session last access time forward, an older time is ignored
+	 *
+	 * @param sessionId      session identifier
+	 * @param lastAccessTime time in milliseconds since epoch
+	 * @return updated sessions count
+	 */
+	@Modifying
+	@Query("update Session s set s.lastAccessTime = ?2 where s.id = ?1 and s.lastAccessTime < ?2")
+	int updateLastAccessTime(Long sessionId, long lastAccessTime);
+
+	/**
+	 * deletes a session, its cells must be deleted first
+	 *
+	 * @param sessionId session identifier
+	 * @return deleted sessions count
+	 */
+	@Modifying
+	@Query("delete from Session s where s.id = ?1")
+	int deleteSession(Long sessionId);
 }
@@ -0,0 +1,36 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Limits the number of executions running at once, for each interpreter and
+ * for the whole server, so a burst of requests does not start more interpreter
+ * processes than the machine can run. Executions above an interpreter limit
+ * wait in one queue by session, sessions taking turns for free slots
+ *
+ * @author Taha BASRI
+ *
+ */
+public interface ExecutionAdmission {
+
+	/**
+	 * waits for a free execution slot of the interpreter, then for a global one.
+	 * Each successful call must be followed by a call to {@link #release(String)}
+	 * once the execution ends
+	 *
+	 * @param interpreterName interpreter name
+	 * @param sessionId       session identifier, null or empty for executions
+	 *                        without session
+	 * @throws RejectedExecutionException when no slot was freed within the
+	 *                                    admission timeout
+	 */
+	void acquire(String interpreterName, String sessionId);
+
+	/**
+	 * frees the execution slots taken by {@link #acquire(String, String)}, the next
+	 * waiting execution is then admitted
+	 *
+	 * @param interpreterName interpreter name
+	 */
+	void release(String interpreterName);
+}
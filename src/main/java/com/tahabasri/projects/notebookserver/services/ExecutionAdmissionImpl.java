@@ -0,0 +1,252 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
+
+/**
+ * Admission control : at most "interpreter.<i>name</i>.max-concurrent" (or
+ * "interpreter.<i>name</i>.maxConcurrent") executions of an interpreter and
+ * "execution.max-concurrent" executions of all interpreters run at once (0 for
+ * no limit). Executions waiting for an interpreter slot are queued by session,
+ * executions without session sharing one queue, and a freed slot goes to the
+ * first execution of the next session in turn : a session with many waiting
+ * executions (a batch client or stateless requests) does not hold back the
+ * others. The global slot is then taken on a fair semaphore, in arrival order.
+ * An execution waiting longer than "execution.admission.timeout" is rejected.
+ *
+ * The interpreter slot is taken before the global one, so executions waiting for
+ * a busy interpreter do not hold slots other interpreters could use
+ *
+ * @author Taha BASRI
+ *
+ */
+@Service
+public class ExecutionAdmissionImpl implements ExecutionAdmission {
+	private static final Logger logger = LogManager.getLogger(ExecutionAdmission.class);
+
+	@Autowired
+	private InterpreterLookup interpreterLookup;
+	@Autowired
+	private ExecutionMetrics executionMetrics;
+
+	/**
+	 * Maximum executions running at once for all interpreters, 0 or less for no
+	 * limit
+	 */
+	@Value("${execution.max-concurrent:0}")
+	private int maxConcurrent;
+
+	/**
+	 * Maximum time in milliseconds an execution waits for its slots
+	 */
+	@Value("${execution.admission.timeout:30000}")
+	private long timeout;
+
+	/**
+	 * Global execution slots, null when executions are not limited
+	 */
+	private Semaphore globalSlots;
+
+	private final ConcurrentMap<String, InterpreterSlots> interpreterSlots = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void initializeSlots() {
+		globalSlots = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+	}
+
+	@Override
+	public void acquire(String interpreterName, String sessionId) {
+		InterpreterSlots slots = slotsFor(interpreterName);
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		boolean admitted = false;
+		slots.queued.incrementAndGet();
+		try {
+			if (slots.acquire(sessionId != null ? sessionId : "", deadline)) {
+				admitted = tryAcquire(globalSlots, deadline);
+				if (!admitted) {
+					slots.release();
+				}
+			}
+		} finally {
+			slots.queued.decrementAndGet();
+		}
+
+		if (!admitted) {
+			logger.warn("No execution slot was freed for '" + interpreterName + "' interpreter in " + timeout
+					+ " ms, rejecting request");
+			executionMetrics.recordAdmissionRejection(interpreterName);
+			throw new RejectedExecutionException("Too many running executions for interpreter " + interpreterName);
+		}
+		slots.running.incrementAndGet();
+		executionMetrics.recordAdmissionWait(interpreterName, System.nanoTime() - start);
+	}
+
+	@Override
+	public void release(String interpreterName) {
+		InterpreterSlots slots = slotsFor(interpreterName);
+		slots.running.decrementAndGet();
+		if (globalSlots != null) {
+			globalSlots.release();
+		}
+		slots.release();
+	}
+
+	/**
+	 * waits for a permit until the deadline, the wait honors the semaphore
+	 * fairness
+	 *
+	 * @param permits  semaphore, null when there is no limit
+	 * @param deadline deadline in nanoseconds, from {@link System#nanoTime()}
+	 * @return true if a permit was taken or if there is no limit, false otherwise
+	 */
+	private static boolean tryAcquire(Semaphore permits, long deadline) {
+		if (permits == null) {
+			return true;
+		}
+		try {
+			return permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private InterpreterSlots slotsFor(String interpreterName) {
+		String name = interpreterName != null ? interpreterName : ExecutionMetrics.UNKNOWN_INTERPRETER;
+		InterpreterSlots slots = interpreterSlots.get(name);
+		return slots != null ? slots : interpreterSlots.computeIfAbsent(name, this::createSlots);
+	}
+
+	/**
+	 * reads the interpreter limit once, "maxConcurrent" is accepted as an alias of
+	 * "max-concurrent" which follows the other properties naming, and exposes its
+	 * waiting and running executions as metrics
+	 */
+	private InterpreterSlots createSlots(String interpreterName) {
+		Properties properties = interpreterLookup.readPropertiesForInterpreter(interpreterName);
+		String value = properties.getProperty("interpreter." + interpreterName + ".max-concurrent",
+				properties.getProperty("interpreter." + interpreterName + ".maxConcurrent"));
+		int limit = value != null ? Integer.parseInt(value.trim()) : 0;
+		if (limit > 0) {
+			logger.info("At most " + limit + " executions of '" + interpreterName + "' interpreter run at once");
+		}
+
+		InterpreterSlots slots = new InterpreterSlots(limit);
+		executionMetrics.bindAdmission(interpreterName, slots, s -> s.queued.get(), s -> s.running.get());
+		return slots;
+	}
+
+	/**
+	 * Execution slots of one interpreter, and executions waiting for them queued
+	 * by session
+	 */
+	private static class InterpreterSlots {
+		/**
+		 * 0 or less when executions of the interpreter are not limited
+		 */
+		private final int limit;
+		/**
+		 * Free slots, guarded by this object
+		 */
+		private int available;
+		/**
+		 * Waiting executions by session, in the sessions turn order. A session takes
+		 * its turn by moving to the end, guarded by this object
+		 */
+		private final Map<String, Deque<CountDownLatch>> waiting = new LinkedHashMap<>();
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicInteger running = new AtomicInteger();
+
+		private InterpreterSlots(int limit) {
+			this.limit = limit;
+			this.available = limit;
+		}
+
+		/**
+		 * takes a free slot, or waits for a released one until the deadline
+		 *
+		 * @param sessionKey waiting queue of the execution
+		 * @param deadline   deadline in nanoseconds, from {@link System#nanoTime()}
+		 * @return true if a slot was taken or if there is no limit, false otherwise
+		 */
+		private boolean acquire(String sessionKey, long deadline) {
+			if (limit <= 0) {
+				return true;
+			}
+			CountDownLatch turn = new CountDownLatch(1);
+			synchronized (this) {
+				if (available > 0 && waiting.isEmpty()) {
+					available--;
+					return true;
+				}
+				waiting.computeIfAbsent(sessionKey, k -> new ArrayDeque<>()).add(turn);
+			}
+
+			try {
+				if (turn.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					return true;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (this) {
+				// the slot may have been handed over after the wait ended
+				if (turn.getCount() == 0) {
+					return true;
+				}
+				Deque<CountDownLatch> queue = waiting.get(sessionKey);
+				queue.remove(turn);
+				if (queue.isEmpty()) {
+					waiting.remove(sessionKey);
+				}
+				return false;
+			}
+		}
+
+		/**
+		 * hands the slot over to the first execution of the next session in turn, or
+		 * frees it when no execution waits
+		 */
+		private void release() {
+			if (limit <= 0) {
+				return;
+			}
+			synchronized (this) {
+				Iterator<Map.Entry<String, Deque<CountDownLatch>>> sessions = waiting.entrySet().iterator();
+				if (!sessions.hasNext()) {
+					available++;
+					return;
+				}
+				Map.Entry<String, Deque<CountDownLatch>> next = sessions.next();
+				sessions.remove();
+				next.getValue().poll().countDown();
+				if (!next.getValue().isEmpty()) {
+					waiting.put(next.getKey(), next.getValue());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers and counters of each stage of the execution pipeline, tagged by
+ * interpreter name and, for executions, by result type. Meters are registered
+ * once per interpreter and reused by all requests
+ *
+ * @author Taha BASRI
+ *
+ */
+@Component
+public class ExecutionMetrics {
+
+	public static final String TAG_INTERPRETER = "interpreter";
+	public static final String TAG_RESULT = "result";
+
+	/**
+	 * Interpreter tag value of requests which interpreter is not known, wrong
+	 * syntax for example
+	 */
+	public static final String UNKNOWN_INTERPRETER = "unknown";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+	/**
+	 * records request code validation and parsing time
+	 *
+	 * @param interpreterName request interpreter name, null if unknown
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordValidation(String interpreterName, long durationNanos) {
+		metersFor(interpreterName).validation.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records interpreter context lookup time
+	 *
+	 * @param interpreterName request interpreter name
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordContextLookup(String interpreterName, long durationNanos) {
+		metersFor(interpreterName).contextLookup.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records interpreter implementation resolution time
+	 *
+	 * @param interpreterName request interpreter name
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordInterpreterResolution(String interpreterName, long durationNanos) {
+		metersFor(interpreterName).interpreterResolution.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records execution wall time
+	 *
+	 * @param interpreterName request interpreter name
+	 * @param result          execution result, its type is used as tag
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordExecution(String interpreterName, ExecutionResult result, long durationNanos) {
+		Meters interpreterMeters = metersFor(interpreterName);
+		Timer execution = ExecutionResult.RESULT_OK.equals(result.getResultType()) ? interpreterMeters.executionOk
+				: interpreterMeters.executionError;
+		execution.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records a batch as a single execution : its wall time covers all cells, and
+	 * it is tagged as an error when one of its executed cells failed
+	 *
+	 * @param interpreterName batch interpreter name
+	 * @param results         results of executed cells
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordBatchExecution(String interpreterName, List<ExecutionResult> results, long durationNanos) {
+		Meters interpreterMeters = metersFor(interpreterName);
+		boolean failed = results.stream().anyMatch(result -> !ExecutionResult.RESULT_OK.equals(result.getResultType()));
+		Timer execution = failed ? interpreterMeters.executionError : interpreterMeters.executionOk;
+		execution.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records session code persistence time
+	 *
+	 * @param interpreterName request interpreter name
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordPersistence(String interpreterName, long durationNanos) {
+		metersFor(interpreterName).persistence.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records the time an execution waited for its execution slots
+	 *
+	 * @param interpreterName request interpreter name
+	 * @param durationNanos   duration in nanoseconds
+	 */
+	public void recordAdmissionWait(String interpreterName, long durationNanos) {
+		metersFor(interpreterName).admissionWait.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * records an execution rejected as no execution slot was freed in time
+	 *
+	 * @param interpreterName request interpreter name
+	 */
+	public void recordAdmissionRejection(String interpreterName) {
+		metersFor(interpreterName).admissionRejections.increment();
+	}
+
+	/**
+	 * exposes the executions of an interpreter waiting for their slots and the
+	 * running ones, values are read from the source when metrics are exported
+	 *
+	 * @param interpreterName interpreter name
+	 * @param source          long lived source object, gauges only keep a weak
+	 *                        reference to it
+	 * @param queued          reads waiting executions count
+	 * @param running         reads running executions count
+	 */
+	public <T> void bindAdmission(String interpreterName, T source, ToDoubleFunction<T> queued,
+			ToDoubleFunction<T> running) {
+		Gauge.builder("notebook.admission.queued", source, queued)
+				.description("Executions waiting for an execution slot").tags(TAG_INTERPRETER, interpreterName)
+				.register(meterRegistry);
+		Gauge.builder("notebook.admission.running", source, running)
+				.description("Executions holding an execution slot").tags(TAG_INTERPRETER, interpreterName)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * gets the metrics receiving measures taken inside an interpreter
+	 *
+	 * @param interpreterName interpreter name
+	 * @return interpreter metrics
+	 */
+	public InterpreterMetrics forInterpreter(String interpreterName) {
+		return metersFor(interpreterName);
+	}
+
+	private Meters metersFor(String interpreterName) {
+		String name = interpreterName != null ? interpreterName : UNKNOWN_INTERPRETER;
+		Meters interpreterMeters = meters.get(name);
+		return interpreterMeters != null ? interpreterMeters : meters.computeIfAbsent(name, Meters::new);
+	}
+
+	/**
+	 * Meters of one interpreter
+	 */
+	private class Meters implements InterpreterMetrics {
+		private final Timer validation;
+		private final Timer contextLookup;
+		private final Timer interpreterResolution;
+		private final Timer executionOk;
+		private final Timer executionError;
+		private final Timer processStart;
+		private final Timer persistence;
+		private final Counter watchdogKills;
+		private final Timer admissionWait;
+		private final Counter admissionRejections;
+		private final DistributionSummary outputOk;
+		private final DistributionSummary outputError;
+
+		private Meters(String interpreterName) {
+			validation = timer("notebook.request.validation", "Request code validation and parsing time",
+					interpreterName);
+			contextLookup = timer("notebook.context.lookup", "Interpreter context lookup time", interpreterName);
+			interpreterResolution = timer("notebook.interpreter.resolution",
+					"Interpreter implementation resolution time", interpreterName);
+			executionOk = executionTimer(interpreterName, ExecutionResult.RESULT_OK);
+			executionError = executionTimer(interpreterName, ExecutionResult.RESULT_ERROR);
+			processStart = timer("notebook.process.start", "Interpreter process launch time", interpreterName);
+			persistence = timer("notebook.session.persistence", "Session code persistence time", interpreterName);
+			watchdogKills = Counter.builder("notebook.watchdog.kills")
+					.description("Executions killed because they reached their timeout")
+					.tags(TAG_INTERPRETER, interpreterName).register(meterRegistry);
+			admissionWait = Timer.builder("notebook.admission.wait")
+					.description("Time waited for an execution slot").tags(TAG_INTERPRETER, interpreterName)
+					.publishPercentileHistogram().register(meterRegistry);
+			admissionRejections = Counter.builder("notebook.admission.rejections")
+					.description("Executions rejected as no execution slot was freed in time")
+					.tags(TAG_INTERPRETER, interpreterName).register(meterRegistry);
+			outputOk = outputSummary(interpreterName, ExecutionResult.RESULT_OK);
+			outputError = outputSummary(interpreterName, ExecutionResult.RESULT_ERROR);
+		}
+
+		private Timer timer(String name, String description, String interpreterName) {
+			return Timer.builder(name).description(description).tags(TAG_INTERPRETER, interpreterName)
+					.register(meterRegistry);
+		}
+
+		private Timer executionTimer(String interpreterName, String resultType) {
+			return Timer.builder("notebook.execution").description("Execution wall time")
+					.tags(TAG_INTERPRETER, interpreterName, TAG_RESULT, resultType).publishPercentileHistogram()
+					.register(meterRegistry);
+		}
+
+		private DistributionSummary outputSummary(String interpreterName, String resultType) {
+			return DistributionSummary.builder("notebook.execution.output")
+					.description("Execution output size, before truncation").baseUnit("bytes")
+					.tags(TAG_INTERPRETER, interpreterName, TAG_RESULT, resultType).register(meterRegistry);
+		}
+
+		@Override
+		public void processStarted(long durationNanos) {
+			processStart.record(durationNanos, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void watchdogKilled() {
+			watchdogKills.increment();
+		}
+
+		@Override
+		public void outputCaptured(String resultType, long bytes) {
+			(ExecutionResult.RESULT_OK.equals(resultType) ? outputOk : outputError).record(bytes);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.services.interpreter.OutputListener;
+
+/**
+ * Asynchronous execution business interface, runs interpretation requests on
+ * the bounded execution pool
+ * 
+ * @author Taha BASRI
+ *
+ */
+public interface ExecutionService {
+
+	/**
+	 * submits an already parsed request for interpretation, the returned future
+	 * fails with a {@link java.util.concurrent.RejectedExecutionException} when the
+	 * execution pool and its queue are full
+	 * 
+	 * @param interpretationRequest user parsed request
+	 * @return future execution result
+	 */
+	CompletableFuture<ExecutionResult> submit(InterpretationRequest interpretationRequest);
+
+	/**
+	 * submits an already parsed request for interpretation, its output is sent to
+	 * the given listener while it is produced
+	 * 
+	 * @param interpretationRequest user parsed request
+	 * @param outputListener        receives output chunks, from the execution
+	 *                              thread
+	 * @return future execution result
+	 */
+	CompletableFuture<ExecutionResult> submit(InterpretationRequest interpretationRequest,
+			OutputListener outputListener);
+
+	/**
+	 * executes an already parsed request for a caller waiting for its result : a
+	 * request without session runs on the calling thread, so it does not take an
+	 * execution pool thread, a session request goes through the session mailbox
+	 * to run in order with the other requests of the session
+	 * 
+	 * @param interpretationRequest user parsed request
+	 * @return future execution result, already completed for a request without
+	 *         session
+	 */
+	CompletableFuture<ExecutionResult> execute(InterpretationRequest interpretationRequest);
+
+	/**
+	 * submits already parsed requests of a same interpreter and session, executed
+	 * in order as one batch
+	 * 
+	 * @param interpretationRequests user parsed requests
+	 * @param stopOnError            true to skip the requests following a failed
+	 *                               one, false to execute all of them
+	 * @return future execution results, one by executed request
+	 */
+	CompletableFuture<List<ExecutionResult>> submitBatch(List<InterpretationRequest> interpretationRequests,
+			boolean stopOnError);
+
+	/**
+	 * runs an action on the calling thread only while the session has no pending
+	 * or running request, requests of the session submitted meanwhile wait for the
+	 * action to end
+	 * 
+	 * @param interpreterName interpreter name
+	 * @param sessionId       session identifier
+	 * @param action          action to run, session eviction for example
+	 * @return true if the action ran, false if the session is busy
+	 */
+	boolean runIfSessionIdle(String interpreterName, String sessionId, Runnable action);
+}
@@ -0,0 +1,296 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.tahabasri.projects.notebookserver.config.ExecutionPoolConfiguration;
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.services.interpreter.OutputListener;
+
+/**
+ * Runs interpretation requests on the execution pool. Requests of a same
+ * session go through the session mailbox and are executed one after the other
+ * in arrival order, while different sessions run in parallel. Synchronous
+ * requests without session run on the caller thread instead. Each execution
+ * waits for its execution slots before running, see {@link ExecutionAdmission}
+ *
+ * @author Taha BASRI
+ *
+ */
+@Service
+public class ExecutionServiceImpl implements ExecutionService {
+	private static final Logger logger = LogManager.getLogger(ExecutionService.class);
+
+	@Autowired
+	private InterpreterService interpreterService;
+
+	@Autowired
+	private ResultCache resultCache;
+
+	@Autowired
+	private ExecutionAdmission executionAdmission;
+
+	@Autowired
+	@Qualifier(ExecutionPoolConfiguration.EXECUTION_TASK_EXECUTOR)
+	private ThreadPoolTaskExecutor executor;
+
+	/**
+	 * Maximum number of requests waiting in a session mailbox
+	 */
+	@Value("${execution.session.queue-capacity:10}")
+	private int sessionQueueCapacity;
+
+	/**
+	 * Mailboxes of sessions having requests to run, a mailbox is in this map only
+	 * while it is scheduled or running, so at most one request per session runs at a
+	 * time
+	 */
+	private final ConcurrentMap<String, SessionMailbox> mailboxes = new ConcurrentHashMap<>();
+
+	@Override
+	public CompletableFuture<ExecutionResult> submit(InterpretationRequest interpretationRequest) {
+		return submit(interpretationRequest, null, false);
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> submit(InterpretationRequest interpretationRequest,
+			OutputListener outputListener) {
+		return submit(interpretationRequest, outputListener, false);
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> execute(InterpretationRequest interpretationRequest) {
+		return submit(interpretationRequest, null, true);
+	}
+
+	/**
+	 * the whole batch takes one place in the session mailbox, it is not interleaved
+	 * with other requests of the session
+	 */
+	@Override
+	public CompletableFuture<List<ExecutionResult>> submitBatch(List<InterpretationRequest> interpretationRequests,
+			boolean stopOnError) {
+		InterpretationRequest first = interpretationRequests.get(0);
+		return execute(first.getInterpreterName(), first.getSessionId(),
+				new ExecutionTask<>(first.getInterpreterName(), first.getSessionId(),
+						() -> interpreterService.interpretBatch(interpretationRequests, stopOnError)),
+				false);
+	}
+
+	/**
+	 * stateless requests which output is not streamed go through the results cache
+	 * when it is enabled
+	 *
+	 * @param inline true to run a request without session on the calling thread
+	 */
+	private CompletableFuture<ExecutionResult> submit(InterpretationRequest interpretationRequest,
+			OutputListener outputListener, boolean inline) {
+		String sessionId = interpretationRequest.getSessionId();
+		if (outputListener == null && (sessionId == null || sessionId.isEmpty()) && resultCache.isEnabled()) {
+			return resultCache.getOrExecute(interpretationRequest, () -> execute(interpretationRequest, null, inline));
+		}
+		return execute(interpretationRequest, outputListener, inline);
+	}
+
+	private CompletableFuture<ExecutionResult> execute(InterpretationRequest interpretationRequest,
+			OutputListener outputListener, boolean inline) {
+		return execute(interpretationRequest.getInterpreterName(), interpretationRequest.getSessionId(),
+				new ExecutionTask<>(interpretationRequest.getInterpreterName(), interpretationRequest.getSessionId(),
+						() -> outputListener != null
+								? interpreterService.interpretRequest(interpretationRequest, outputListener)
+								: interpreterService.interpretRequest(interpretationRequest)),
+				inline);
+	}
+
+	/**
+	 * runs the task on the execution pool, through the session mailbox if the
+	 * task belongs to a session
+	 *
+	 * @param interpreterName interpreter name
+	 * @param sessionId       session identifier, null or empty if no session is
+	 *                        needed
+	 * @param task            execution task
+	 * @param inline          true to run the task on the calling thread when it
+	 *                        does not belong to a session
+	 * @return task future result
+	 */
+	private <T> CompletableFuture<T> execute(String interpreterName, String sessionId, ExecutionTask<T> task,
+			boolean inline) {
+		if (sessionId == null || sessionId.isEmpty()) {
+			if (inline) {
+				task.run();
+				return task.result;
+			}
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				logger.warn("Execution pool is saturated, rejecting request");
+				task.result.completeExceptionally(e);
+			}
+			return task.result;
+		}
+
+		String key = interpreterName + "/" + sessionId;
+		SessionMailbox[] created = new SessionMailbox[1];
+		boolean[] accepted = new boolean[1];
+		mailboxes.compute(key, (k, current) -> {
+			if (current == null) {
+				current = new SessionMailbox(k);
+				created[0] = current;
+			}
+			if (current.size < sessionQueueCapacity) {
+				current.tasks.add(task);
+				current.size++;
+				accepted[0] = true;
+			}
+			return current;
+		});
+
+		if (!accepted[0]) {
+			logger.warn("Session '" + key + "' has too many pending requests, rejecting request");
+			task.result.completeExceptionally(
+					new RejectedExecutionException("Too many pending requests for session " + key));
+		} else if (created[0] != null) {
+			schedule(created[0]);
+		}
+		return task.result;
+	}
+
+	/**
+	 * an empty mailbox holds the session while the action runs, requests added to
+	 * it are scheduled once the action ends
+	 */
+	@Override
+	public boolean runIfSessionIdle(String interpreterName, String sessionId, Runnable action) {
+		String key = interpreterName + "/" + sessionId;
+		SessionMailbox mailbox = new SessionMailbox(key);
+		if (mailboxes.putIfAbsent(key, mailbox) != null) {
+			return false;
+		}
+		try {
+			action.run();
+		} finally {
+			boolean hasRequests = mailboxes.computeIfPresent(key,
+					(k, current) -> current.tasks.isEmpty() ? null : current) != null;
+			if (hasRequests) {
+				schedule(mailbox);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * submits the mailbox to the execution pool, if the pool is saturated the
+	 * mailbox is discarded with all its requests
+	 */
+	private void schedule(SessionMailbox mailbox) {
+		try {
+			executor.execute(mailbox);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Execution pool is saturated, rejecting requests of session '" + mailbox.key + "'");
+			mailboxes.remove(mailbox.key, mailbox);
+			ExecutionTask<?> task;
+			while ((task = mailbox.tasks.poll()) != null) {
+				task.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Pending requests of one session, runs them one by one : after each request
+	 * the mailbox goes back to the pool queue so other sessions get their turn
+	 */
+	private class SessionMailbox implements Runnable {
+		private final String key;
+		private final Queue<ExecutionTask<?>> tasks = new ConcurrentLinkedQueue<>();
+		/**
+		 * Pending requests count, only updated inside map compute calls
+		 */
+		private int size;
+
+		private SessionMailbox(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			boolean hasNext = true;
+			while (hasNext) {
+				ExecutionTask<?> task = tasks.peek();
+				if (task != null) {
+					task.run();
+				}
+
+				// removing the request and releasing the mailbox when it is empty must be
+				// atomic with new requests being added
+				hasNext = mailboxes.computeIfPresent(key, (k, current) -> {
+					current.tasks.poll();
+					current.size--;
+					return current.tasks.isEmpty() ? null : current;
+				}) != null;
+
+				if (hasNext) {
+					try {
+						executor.execute(this);
+						return;
+					} catch (RejectedExecutionException e) {
+						// requests already accepted for this session keep running on this thread
+						logger.debug("Execution pool is saturated, running next request of session '" + key
+								+ "' inline");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * One interpretation (a request, streamed or not, or a batch of requests) and
+	 * its future result. The interpretation runs once its execution slots are
+	 * taken, waiting for them holds no database connection
+	 */
+	private class ExecutionTask<T> implements Runnable {
+		private final String interpreterName;
+		private final String sessionId;
+		private final Supplier<T> interpretation;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		private ExecutionTask(String interpreterName, String sessionId, Supplier<T> interpretation) {
+			this.interpreterName = interpreterName;
+			this.sessionId = sessionId;
+			this.interpretation = interpretation;
+		}
+
+		@Override
+		public void run() {
+			try {
+				executionAdmission.acquire(interpreterName, sessionId);
+			} catch (RejectedExecutionException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			try {
+				result.complete(interpretation.get());
+			} catch (RuntimeException e) {
+				logger.error("Error interpreting the request : " + e.getMessage());
+				result.completeExceptionally(e);
+			} finally {
+				executionAdmission.release(interpreterName);
+			}
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package com.tahabasri.projects.notebookserver.services;
 
+import java.util.List;
+
 import com.tahabasri.projects.notebookserver.models.ExecutionResult;
 import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
 import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.interpreter.OutputListener;
 
 /**
  * Interpreter business interface, offers main services for interpreting
@@ -31,4 +34,28 @@ public interface InterpreterService {
 	 * @return execution result with interpretation status and final result
 	 */
 	ExecutionResult interpretRequest(InterpretationRequest interpretationRequest);
+
+	/**
+	 * same as {@link #interpretRequest(InterpretationRequest)} but output is sent
+	 * to the given listener while it is produced, the returned result holds the
+	 * execution status and error messages only
+	 * 
+	 * @param interpretationRequest user parsed request
+	 * @param outputListener        receives output chunks
+	 * @return execution result with interpretation status
+	 */
+	ExecutionResult interpretRequest(InterpretationRequest interpretationRequest, OutputListener outputListener);
+
+	/**
+	 * interprets already parsed requests of a same interpreter and session one
+	 * after the other, as a notebook "run all" : context, session and interpreter
+	 * are resolved once, and interpreters supporting it execute all requests in a
+	 * single call
+	 * 
+	 * @param interpretationRequests user parsed requests, in execution order
+	 * @param stopOnError            true to skip the requests following a failed
+	 *                               one, false to execute all of them
+	 * @return one execution result by executed request, in order
+	 */
+	List<ExecutionResult> interpretBatch(List<InterpretationRequest> interpretationRequests, boolean stopOnError);
 }
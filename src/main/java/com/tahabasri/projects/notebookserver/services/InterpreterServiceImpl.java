@@ -1,13 +1,19 @@
 package com.tahabasri.projects.notebookserver.services;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import com.tahabasri.projects.notebookserver.models.ExecutionResult;
@@ -17,8 +23,10 @@ import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 import com.tahabasri.projects.notebookserver.models.entities.Session;
 import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
 import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+import com.tahabasri.projects.notebookserver.services.interpreter.ExecutionContext;
 import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
+import com.tahabasri.projects.notebookserver.services.interpreter.OutputListener;
 
 @Service
 public class InterpreterServiceImpl implements InterpreterService {
@@ -30,18 +38,71 @@ public class InterpreterServiceImpl implements InterpreterService {
 	@Value("${global.request.pattern}")
 	private String codeRequestPattern;
 
+	/**
+	 * Request code parser, built once from the request pattern
+	 */
+	private RequestCodeParser requestCodeParser;
+
 	@Autowired
 	private InterpreterContextRepository contextRepository;
 	@Autowired
 	private SessionRepository sessionRepository;
 	@Autowired
+	private SessionCache sessionCache;
+	@Autowired
 	private InterpreterLookup interpreterLookup;
+	@Autowired
+	private ExecutionMetrics executionMetrics;
+	@Autowired
+	private SessionEviction sessionEviction;
+
+	@PostConstruct
+	public void initializeParser() {
+		requestCodeParser = new RequestCodeParser(codeRequestPattern);
+	}
+
+	/**
+	 * warms up the interpreters of all known contexts once the application is
+	 * ready, so first requests do not wait for background processes to start.
+	 * State left by a previous run for sessions which do not exist anymore is
+	 * released first
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUpInterpreters() {
+		for (InterpreterContext context : contextRepository.findAll()) {
+			Interpreter interpreter = interpreterLookup.getInterpreter(context);
+			if (interpreter == null) {
+				continue;
+			}
+			logger.info("Warming up '" + context.getInterpreterName() + "' interpreter");
+			try {
+				Set<String> sessionKeys = sessionRepository.findByContext(context).stream().map(Session::getStateKey)
+						.collect(Collectors.toSet());
+				interpreter.retainSessions(interpreterLookup.getDescriptor(context), sessionKeys);
+				interpreter.warmUp(new ExecutionContext(interpreterLookup.getDescriptor(context), null, null,
+						executionMetrics.forInterpreter(context.getInterpreterName())));
+			} catch (RuntimeException e) {
+				logger.error("Error warming up '" + context.getInterpreterName() + "' interpreter : " + e.getMessage());
+			}
+		}
+	}
 
 	@Override
 	public InterpretationRequest validateAndParseInterpretationRequest(UserRequestInput interpretationRequest) {
-		if (validateRequestCode(interpretationRequest.getCode())) {
+		long start = System.nanoTime();
+		InterpretationRequest request = validateAndParse(interpretationRequest);
+		executionMetrics.recordValidation(request != null ? request.getInterpreterName() : null,
+				System.nanoTime() - start);
+		return request;
+	}
+
+	private InterpretationRequest validateAndParse(UserRequestInput interpretationRequest) {
+		String code = interpretationRequest.getCode();
+		int separator = validateRequestCode(code);
+		if (separator >= 0) {
 			logger.info("User code has good syntax, parsing it ...");
-			InterpretationRequest request = new InterpretationRequest(interpretationRequest);
+			InterpretationRequest request = new InterpretationRequest(interpretationRequest,
+					requestCodeParser.interpreterName(code, separator), requestCodeParser.code(code, separator));
 
 			if (request.isBlank()) {
 				logger.warn("User code was not fully parsed, mark it as having wrong syntax");
@@ -55,10 +116,21 @@ public class InterpreterServiceImpl implements InterpreterService {
 		return null;
 	}
 
+	/**
+	 * runs without transaction : the interpreter may run up to its timeout and must
+	 * not hold a database connection meanwhile. Sessions are loaded with their code
+	 * lines, and session creation and code saving run in their own short
+	 * transactions
+	 */
 	@Override
 	public ExecutionResult interpretRequest(InterpretationRequest interpretationRequest) {
-		InterpreterContext context = contextRepository
-				.findByInterpreterName(interpretationRequest.getInterpreterName());
+		return interpretRequest(interpretationRequest, (OutputListener) null);
+	}
+
+	@Override
+	public ExecutionResult interpretRequest(InterpretationRequest interpretationRequest,
+			OutputListener outputListener) {
+		InterpreterContext context = findContext(interpretationRequest.getInterpreterName());
 
 		boolean noNeedForSession = interpretationRequest
 				.getStatus() == InterpretationRequest.INTERPRETATION_REQUEST_NO_NEED_FOR_SESSION;
@@ -67,26 +139,107 @@ public class InterpreterServiceImpl implements InterpreterService {
 			logger.warn("No session is required for the request!");
 		}
 
-		return noNeedForSession ? interpretRequest(interpretationRequest, context)
-				: interpretRequestSessionAware(interpretationRequest, context);
+		OutputTracker outputTracker = outputListener != null ? new OutputTracker(outputListener) : null;
+		return noNeedForSession ? interpretRequest(interpretationRequest, context, outputTracker)
+				: interpretRequestSessionAware(interpretationRequest, context, outputTracker);
+	}
+
+	@Override
+	public List<ExecutionResult> interpretBatch(List<InterpretationRequest> interpretationRequests,
+			boolean stopOnError) {
+		InterpretationRequest first = interpretationRequests.get(0);
+		InterpreterContext context = findContext(first.getInterpreterName());
+		if (context == null) {
+			return Collections.singletonList(new ExecutionResult(ExecutionResult.RESULT_ERROR,
+					String.format("Couldn't find '%s' interpreter on server.", first.getInterpreterName())));
+		}
+
+		Session session = null;
+		if (first.getStatus() != InterpretationRequest.INTERPRETATION_REQUEST_NO_NEED_FOR_SESSION) {
+			session = retrieveSessionForRequest(context, first.getSessionId());
+			if (session == null) {
+				logger.info("Batch needs a new session, creating one ...");
+				createNewSession(context, first);
+				session = retrieveSessionForRequest(context, first.getSessionId());
+			}
+		}
+
+		Interpreter interpreter = resolveInterpreter(context);
+		if (interpreter == null) {
+			return Collections.singletonList(new ExecutionResult(ExecutionResult.RESULT_ERROR,
+					String.format("Couldn't find '%s' interpreter on server.", context.getInterpreterName())));
+		}
+
+		ExecutionContext executionContext = new ExecutionContext(interpreterLookup.getDescriptor(context), session,
+				null, executionMetrics.forInterpreter(context.getInterpreterName()));
+		// a batch is recorded as a single execution, whether its cells run in one call or one by one
+		long start = System.nanoTime();
+		if (!interpreter.supportsBatch(executionContext)) {
+			logger.debug("Interpreter executes requests one by one, running the batch request by request");
+			List<ExecutionResult> results = interpretOneByOne(interpreter, interpretationRequests, context, session,
+					stopOnError);
+			executionMetrics.recordBatchExecution(context.getInterpreterName(), results, System.nanoTime() - start);
+			return results;
+		}
+
+		logger.info("Interpreting a batch of " + interpretationRequests.size() + " requests");
+		List<String> codes = interpretationRequests.stream().map(InterpretationRequest::getCode)
+				.collect(Collectors.toList());
+		List<ExecutionResult> results = interpreter.interpretBatch(codes, executionContext, stopOnError);
+		executionMetrics.recordBatchExecution(context.getInterpreterName(), results, System.nanoTime() - start);
+
+		if (session != null) {
+			for (int i = 0; i < results.size(); i++) {
+				ExecutionResult result = results.get(i);
+				if (ExecutionResult.RESULT_OK.equals(result.getResultType()) && result.getResultContent().isEmpty()) {
+					saveSessionCode(session, interpretationRequests.get(i));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * interprets batch requests as separate executions, each request code is
+	 * saved in session before the next request runs
+	 * 
+	 * @param interpreter            interpreter implementation
+	 * @param interpretationRequests batch requests
+	 * @param context                interpreter context
+	 * @param session                batch session, null if no session is needed
+	 * @param stopOnError            true to skip the requests following a failed
+	 *                               one
+	 * @return one execution result by executed request
+	 */
+	private List<ExecutionResult> interpretOneByOne(Interpreter interpreter,
+			List<InterpretationRequest> interpretationRequests, InterpreterContext context, Session session,
+			boolean stopOnError) {
+		List<ExecutionResult> results = new ArrayList<>(interpretationRequests.size());
+		for (InterpretationRequest interpretationRequest : interpretationRequests) {
+			ExecutionResult result = new ExecutionResult();
+			boolean interpretation = interpret(interpreter, interpretationRequest, context, session, null, result);
+			results.add(result);
+			if (interpretation && session != null && result.getResultContent().isEmpty()) {
+				saveSessionCode(session, interpretationRequest);
+			}
+			if (!interpretation && stopOnError) {
+				break;
+			}
+		}
+		return results;
 	}
 
 	/**
-	 * validates the request code by evaluating it against a pre-defined pattern
+	 * validates the request code against the pre-defined pattern, and tokenizes it
+	 * in the same pass
 	 * 
 	 * @param code request code
-	 * @return true if code has good syntax, false otherwise
+	 * @return index of the space separating interpreter name from code if code has
+	 *         good syntax, -1 otherwise
 	 */
-	private boolean validateRequestCode(String code) {
+	private int validateRequestCode(String code) {
 		logger.info("Validating user code");
-		boolean validValue = code != null && !code.isEmpty();
-
-		if (codeRequestPattern != null) {
-			logger.debug("Parsing code special characters");
-			codeRequestPattern = codeRequestPattern.replaceAll("//", "\\\\");
-		}
-
-		return validValue && code.matches(Objects.requireNonNull(codeRequestPattern));
+		return requestCodeParser.parse(code);
 	}
 
 	/**
@@ -97,7 +250,7 @@ public class InterpreterServiceImpl implements InterpreterService {
 	 * @return user parsed request
 	 */
 	private InterpretationRequest parseRequest(InterpretationRequest request) {
-		InterpreterContext context = contextRepository.findByInterpreterName(request.getInterpreterName());
+		InterpreterContext context = findContext(request.getInterpreterName());
 		int status;
 
 		if (context != null) {
@@ -105,9 +258,8 @@ public class InterpreterServiceImpl implements InterpreterService {
 				logger.info("Parsing ... Request has good syntaxt but does not need a session");
 				status = request.getStatus();
 			} else {
-				Session session = retrieveSessionForRequest(context, request.getSessionId());
-
-				if (session != null) {
+				// the session is loaded later by the request, once its previous requests are done
+				if (sessionExists(context, request.getSessionId())) {
 					logger.info("Parsing ... Request has good syntaxt, and has a session in interpreter context");
 					status = InterpretationRequest.INTERPRETATION_REQUEST_GOOD;
 				} else {
@@ -125,6 +277,68 @@ public class InterpreterServiceImpl implements InterpreterService {
 		return requestWithStatus(request, status);
 	}
 
+	/**
+	 * finds the interpreter context, measuring the lookup time
+	 * 
+	 * @param interpreterName interpreter name
+	 * @return interpreter context if found, null otherwise
+	 */
+	private InterpreterContext findContext(String interpreterName) {
+		long start = System.nanoTime();
+		InterpreterContext context = sessionCache.findContext(interpreterName);
+		executionMetrics.recordContextLookup(interpreterName, System.nanoTime() - start);
+		return context;
+	}
+
+	/**
+	 * resolves the interpreter implementation and its descriptor, measuring the
+	 * resolution time
+	 * 
+	 * @param context interpreter context
+	 * @return interpreter instance if found, null otherwise
+	 */
+	private Interpreter resolveInterpreter(InterpreterContext context) {
+		long start = System.nanoTime();
+		Interpreter interpreter = interpreterLookup.getInterpreter(context);
+		executionMetrics.recordInterpreterResolution(context.getInterpreterName(), System.nanoTime() - start);
+		return interpreter;
+	}
+
+	/**
+	 * executes the request, measuring execution wall time
+	 * 
+	 * @param interpreter           interpreter implementation
+	 * @param interpretationRequest interpretation request
+	 * @param context               interpreter context
+	 * @param session               request session, null if no session is needed
+	 * @param outputTracker         streamed output listener, null if output is not
+	 *                              streamed
+	 * @param result                interpretation result
+	 * @return true if interpretation was good, false otherwise
+	 */
+	private boolean execute(Interpreter interpreter, InterpretationRequest interpretationRequest,
+			InterpreterContext context, Session session, OutputTracker outputTracker, ExecutionResult result) {
+		long start = System.nanoTime();
+		boolean interpretation = interpret(interpreter, interpretationRequest, context, session, outputTracker,
+				result);
+		executionMetrics.recordExecution(context.getInterpreterName(), result, System.nanoTime() - start);
+		return interpretation;
+	}
+
+	/**
+	 * executes the request without recording it, batch cells are recorded with
+	 * their batch
+	 * 
+	 * @see #execute(Interpreter, InterpretationRequest, InterpreterContext, Session,
+	 *      OutputTracker, ExecutionResult)
+	 */
+	private boolean interpret(Interpreter interpreter, InterpretationRequest interpretationRequest,
+			InterpreterContext context, Session session, OutputTracker outputTracker, ExecutionResult result) {
+		ExecutionContext executionContext = new ExecutionContext(interpreterLookup.getDescriptor(context), session,
+				outputTracker, executionMetrics.forInterpreter(context.getInterpreterName()));
+		return interpreter.interpret(interpretationRequest, executionContext, result);
+	}
+
 	/**
 	 * helper method to set status
 	 * 
@@ -142,19 +356,21 @@ public class InterpreterServiceImpl implements InterpreterService {
 	 * 
 	 * @param interpretationRequest interpretation parsed request
 	 * @param context               interpreter context
+	 * @param outputTracker         streamed output listener, null if output is not
+	 *                              streamed
 	 * @return final execution result which holds interpretation status and its
 	 *         result content
 	 */
-	private ExecutionResult interpretRequest(InterpretationRequest interpretationRequest, InterpreterContext context) {
+	private ExecutionResult interpretRequest(InterpretationRequest interpretationRequest, InterpreterContext context,
+			OutputTracker outputTracker) {
 		ExecutionResult result = new ExecutionResult();
 
 		if (interpretationRequest.isGood()) {
 			logger.info("Request is ready for interpretation");
-			Interpreter interpreter = interpreterLookup.getInterpreter(context);
+			Interpreter interpreter = resolveInterpreter(context);
 			if (interpreter != null) {
 				logger.info("Attach properties to " + context.getInterpreterName() + "interpreter");
-				interpreter.setProperties(interpreterLookup.readPropertiesForInterpreter(context.getInterpreterName()));
-				interpreter.interpret(interpretationRequest, context, result);
+				execute(interpreter, interpretationRequest, context, null, outputTracker, result);
 			}else{
 				return new ExecutionResult(ExecutionResult.RESULT_ERROR,
 						String.format("Couldn't find '%s' interpreter on server.", context.getInterpreterName()));
@@ -170,35 +386,49 @@ public class InterpreterServiceImpl implements InterpreterService {
 	 * 
 	 * @param interpretationRequest interpretation request
 	 * @param context               interpreter context
+	 * @param outputTracker         streamed output listener, null if output is not
+	 *                              streamed
 	 * @return final execution result which holds interpretation status and its
 	 *         result content
 	 */
 	private ExecutionResult interpretRequestSessionAware(InterpretationRequest interpretationRequest,
-			InterpreterContext context) {
+			InterpreterContext context, OutputTracker outputTracker) {
 		ExecutionResult result = new ExecutionResult();
 		if (interpretationRequest.isNewSession()) {
-			logger.info("Request needs a new session, creating one ...");
-			createNewSession(context, interpretationRequest);
-			logger.info("New session was created");
+			// a previous request of the same session may have created it since this one was parsed
+			if (retrieveSessionForRequest(context, interpretationRequest.getSessionId()) != null) {
+				logger.info("Session was created by a previous request");
+				interpretationRequest.setStatus(InterpretationRequest.INTERPRETATION_REQUEST_GOOD);
+			} else {
+				logger.info("Request needs a new session, creating one ...");
+				createNewSession(context, interpretationRequest);
+				logger.info("New session was created");
+			}
 		}
 
 		if (interpretationRequest.isGood()) {
 			logger.info("Request is ready for interpretation");
-			Interpreter interpreter = interpreterLookup.getInterpreter(context);
+			Interpreter interpreter = resolveInterpreter(context);
 			if (interpreter != null) {
-				logger.info("Attach properties to " + context.getInterpreterName() + "interpreter");
-				interpreter.setProperties(interpreterLookup.readPropertiesForInterpreter(context.getInterpreterName()));
-
-				logger.info("Attach session to interpreter");
+				logger.info("Attach properties and session to " + context.getInterpreterName() + "interpreter");
 				Session requestSession = retrieveSessionForRequest(context, interpretationRequest.getSessionId());
-				interpreter.setSession(requestSession);
+				if (requestSession == null) {
+					// the session was evicted since the request was parsed
+					logger.info("Session was evicted, creating a new one ...");
+					createNewSession(context, interpretationRequest);
+					requestSession = retrieveSessionForRequest(context, interpretationRequest.getSessionId());
+				}
 
-				boolean interpretation = interpreter.interpret(interpretationRequest, context, result);
+				boolean interpretation = execute(interpreter, interpretationRequest, context, requestSession,
+						outputTracker, result);
 
 				// save code for given session only if :
 				// - its interpretation is good
-				// - does not return result content (variable initialization for example)
-				if (interpretation && result.getResultContent().isEmpty()) {
+				// - does not return result content (variable initialization for example),
+				//   streamed output included
+				boolean hasOutput = !result.getResultContent().isEmpty()
+						|| (outputTracker != null && outputTracker.hasOutput);
+				if (interpretation && !hasOutput) {
 					logger.info("Saving interpreted code in session (Non Terminal Expression) ...");
 					saveSessionCode(requestSession, interpretationRequest);
 				} else {
@@ -219,11 +449,7 @@ public class InterpreterServiceImpl implements InterpreterService {
 		Session session = new Session(getSessionIdentifier(interpretationRequest.getSessionId()), context,
 				new ArrayList<>());
 
-		List<Session> sessions = context.getSessions();
-		sessions.add(session);
-		context.setSessions(sessions);
-
-		contextRepository.saveAndFlush(context);
+		sessionEviction.sessionCreated(sessionCache.saveSession(session));
 
 		logger.debug("Marking the request as being ready for interpretation");
 		interpretationRequest.setStatus(InterpretationRequest.INTERPRETATION_REQUEST_GOOD);
@@ -236,15 +462,14 @@ public class InterpreterServiceImpl implements InterpreterService {
 	 * @param interpretationRequest interpretation request
 	 */
 	private void saveSessionCode(Session session, InterpretationRequest interpretationRequest) {
-		List<String> codeLines = session.getCodeLines();
-		codeLines.add(interpretationRequest.getCode());
-		session.setCodeLines(codeLines);
-
-		sessionRepository.saveAndFlush(session);
+		long start = System.nanoTime();
+		sessionCache.appendCode(session, interpretationRequest.getCode());
+		executionMetrics.recordPersistence(interpretationRequest.getInterpreterName(), System.nanoTime() - start);
 	}
 
 	/**
-	 * gets the request specific session
+	 * gets the request specific session, and records its access so it is not
+	 * evicted as idle
 	 * 
 	 * @param context          interpreter context
 	 * @param requestSessionId request session identifier
@@ -255,19 +480,31 @@ public class InterpreterServiceImpl implements InterpreterService {
 
 			Long sessionId = getSessionIdentifier(requestSessionId);
 			if (sessionId != null) {
-
-				List<Session> sessions = context.getSessions();
-
-				if (sessions != null) {
-					return sessions.stream().filter(s -> sessionId.longValue() == s.getId()).findAny()
-							.orElse(null);
+				Session session = sessionCache.findSession(context, sessionId);
+				if (session != null) {
+					sessionEviction.sessionAccessed(session);
 				}
+				return session;
 			}
 
 		}
 		return null;
 	}
 
+	/**
+	 * checks if the request session exists, without loading it
+	 * 
+	 * @param context          interpreter context
+	 * @param requestSessionId request session identifier
+	 * @return true if the session exists, false otherwise
+	 */
+	private boolean sessionExists(InterpreterContext context, String requestSessionId) {
+		Long sessionId = requestSessionId != null && !requestSessionId.isEmpty()
+				? getSessionIdentifier(requestSessionId)
+				: null;
+		return sessionId != null && sessionCache.hasSession(context, sessionId);
+	}
+
 	/**
 	 * helper method to parse session identifier
 	 * 
@@ -282,4 +519,25 @@ public class InterpreterServiceImpl implements InterpreterService {
 			return null;
 		}
 	}
+
+	/**
+	 * Forwards streamed output and records if the execution produced any, as
+	 * streamed output is not part of the execution result
+	 */
+	private static class OutputTracker implements OutputListener {
+		private final OutputListener outputListener;
+		private volatile boolean hasOutput;
+
+		private OutputTracker(OutputListener outputListener) {
+			this.outputListener = outputListener;
+		}
+
+		@Override
+		public void onOutput(String stream, String chunk) {
+			if (!hasOutput && !chunk.trim().isEmpty()) {
+				hasOutput = true;
+			}
+			outputListener.onOutput(stream, chunk);
+		}
+	}
 }
@@ -0,0 +1,111 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.regex.Pattern;
+
+/**
+ * Validates and tokenizes user code of the form '%interpreter code' in one
+ * pass. The request pattern is compiled once : the default pattern
+ * (%[a-z]{3,}[ ]\S.+) is checked by a hand written scanner, any other pattern
+ * is matched with its precompiled regex
+ *
+ * @author Taha BASRI
+ *
+ */
+public final class RequestCodeParser {
+
+	/**
+	 * Default request pattern, once special characters are parsed
+	 */
+	public static final String DEFAULT_PATTERN = "%[a-z]{3,}[ ]\\S.+";
+
+	private static final int MIN_INTERPRETER_NAME_LENGTH = 3;
+
+	private final Pattern pattern;
+
+	/**
+	 * @param requestPattern request pattern, using // instead of \ for special
+	 *                       characters as in properties file
+	 */
+	public RequestCodeParser(String requestPattern) {
+		String parsedPattern = requestPattern.replace("//", "\\");
+		this.pattern = DEFAULT_PATTERN.equals(parsedPattern) ? null : Pattern.compile(parsedPattern);
+	}
+
+	/**
+	 * validates user code and finds the space separating interpreter name from
+	 * code, interpreter name is then at [1, separator[ and code after separator
+	 *
+	 * @param code user code
+	 * @return separator index if code has good syntax, -1 otherwise
+	 */
+	public int parse(String code) {
+		if (code == null || code.isEmpty()) {
+			return -1;
+		}
+		if (pattern != null) {
+			return pattern.matcher(code).matches() ? code.indexOf(' ') : -1;
+		}
+		return scan(code);
+	}
+
+	/**
+	 * @param code      valid user code
+	 * @param separator separator index given by {@link #parse(String)}
+	 * @return interpreter name
+	 */
+	public String interpreterName(String code, int separator) {
+		return code.substring(0, separator).replace("%", "").trim();
+	}
+
+	/**
+	 * @param code      valid user code
+	 * @param separator separator index given by {@link #parse(String)}
+	 * @return code to interpret
+	 */
+	public String code(String code, int separator) {
+		return code.substring(separator + 1).trim();
+	}
+
+	/**
+	 * default pattern scanner : '%', at least 3 lower case letters, a space, a non
+	 * whitespace character then at least one character other than a line
+	 * terminator
+	 */
+	private static int scan(String code) {
+		int length = code.length();
+		if (code.charAt(0) != '%') {
+			return -1;
+		}
+
+		int index = 1;
+		while (index < length && code.charAt(index) >= 'a' && code.charAt(index) <= 'z') {
+			index++;
+		}
+		int separator = index;
+		if (separator - 1 < MIN_INTERPRETER_NAME_LENGTH || separator + 2 >= length
+				|| code.charAt(separator) != ' ' || isWhitespace(code.charAt(separator + 1))) {
+			return -1;
+		}
+
+		for (index = separator + 2; index < length; index++) {
+			if (isLineTerminator(code.charAt(index))) {
+				return -1;
+			}
+		}
+		return separator;
+	}
+
+	/**
+	 * same characters as regex \s
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * characters not matched by regex '.'
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
@@ -0,0 +1,47 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+
+/**
+ * Opt-in cache of stateless requests results, keyed by interpreter name and
+ * normalized code. Identical requests arriving while the code is executing
+ * share its execution, later ones get the cached result until it expires or is
+ * evicted. Only successful results are cached
+ * 
+ * @author Taha BASRI
+ *
+ */
+public interface ResultCache {
+
+	/**
+	 * @return true if results are cached ("cache.result.enabled" property)
+	 */
+	boolean isEnabled();
+
+	/**
+	 * gets the cached result of the request, or executes it. When the same request
+	 * is already executing, its result is shared instead of executing it again.
+	 * Only successful results are cached
+	 * 
+	 * @param interpretationRequest stateless user parsed request
+	 * @param execution             starts the request execution on a miss
+	 * @return future execution result
+	 */
+	CompletableFuture<ExecutionResult> getOrExecute(InterpretationRequest interpretationRequest,
+			Supplier<CompletableFuture<ExecutionResult>> execution);
+
+	/**
+	 * @return results cache usage counters
+	 */
+	CacheStatistics getStatistics();
+
+	/**
+	 * @return count of requests which shared the execution of an identical request
+	 */
+	long getCoalescedCount();
+}
@@ -0,0 +1,170 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.cache.LruCache;
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+
+@Service
+public class ResultCacheImpl implements ResultCache {
+	private static final Logger logger = LogManager.getLogger(ResultCache.class);
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	@Value("${cache.result.enabled:false}")
+	private boolean enabled;
+
+	/**
+	 * Maximum cached results count
+	 */
+	@Value("${cache.result.max-size:1000}")
+	private int maxSize;
+
+	/**
+	 * Time to live of cached results after their execution, in milliseconds
+	 */
+	@Value("${cache.result.ttl:60000}")
+	private long ttl;
+
+	private LruCache<String, ExecutionResult> results;
+
+	/**
+	 * Executions running for a key, an execution stays in this map until its result
+	 * is cached so identical requests arriving meanwhile share it. Failed results
+	 * are not cached, an identical request arriving after a failed execution ended
+	 * executes again
+	 */
+	private final ConcurrentMap<String, CompletableFuture<ExecutionResult>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	@PostConstruct
+	public void initializeCache() {
+		if (enabled) {
+			logger.info("Initializing results cache of size " + maxSize + " and ttl " + ttl + "ms");
+		}
+		// results are not refreshed by reads, a result expires ttl after its execution
+		results = new LruCache<>(maxSize, ttl, true);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> getOrExecute(InterpretationRequest interpretationRequest,
+			Supplier<CompletableFuture<ExecutionResult>> execution) {
+		String key = key(interpretationRequest);
+		ExecutionResult cached = results.get(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(copy(cached));
+		}
+
+		CompletableFuture<ExecutionResult> created = new CompletableFuture<>();
+		CompletableFuture<ExecutionResult> running = inFlight.putIfAbsent(key, created);
+		if (running != null) {
+			coalesced.increment();
+			return running.thenApply(ResultCacheImpl::copy);
+		}
+
+		// the previous execution may have cached its result and left the in-flight map
+		// between the first lookup and this one, the lookup was already counted
+		cached = results.peek(key);
+		if (cached != null) {
+			inFlight.remove(key, created);
+			created.complete(cached);
+			return CompletableFuture.completedFuture(copy(cached));
+		}
+
+		CompletableFuture<ExecutionResult> executed;
+		try {
+			executed = execution.get();
+		} catch (RuntimeException e) {
+			inFlight.remove(key, created);
+			created.completeExceptionally(e);
+			throw e;
+		}
+		executed.whenComplete((result, error) -> {
+			if (error == null && result != null && ExecutionResult.RESULT_OK.equals(result.getResultType())) {
+				// cached before leaving the in-flight map, so no request misses both
+				results.put(key, copy(result));
+			}
+			inFlight.remove(key, created);
+			if (error != null) {
+				created.completeExceptionally(error);
+			} else {
+				created.complete(result);
+			}
+		});
+		return executed;
+	}
+
+	@Override
+	public CacheStatistics getStatistics() {
+		return results.getStatistics();
+	}
+
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * builds the cache key : interpreter name and SHA-256 of the normalized code,
+	 * line endings and trailing spaces do not change the key
+	 */
+	private static String key(InterpretationRequest interpretationRequest) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		byte[] hash = digest.digest(normalize(interpretationRequest.getCode()).getBytes(StandardCharsets.UTF_8));
+		StringBuilder key = new StringBuilder(interpretationRequest.getInterpreterName()).append(':');
+		for (byte b : hash) {
+			key.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+		}
+		return key.toString();
+	}
+
+	private static String normalize(String code) {
+		if (code == null) {
+			return "";
+		}
+		String[] lines = code.replace("\r\n", "\n").replace('\r', '\n').split("\n", -1);
+		StringBuilder normalized = new StringBuilder(code.length());
+		for (String line : lines) {
+			int end = line.length();
+			while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+				end--;
+			}
+			normalized.append(line, 0, end).append('\n');
+		}
+		return normalized.toString().trim();
+	}
+
+	/**
+	 * results are mutable, each caller gets its own copy
+	 */
+	private static ExecutionResult copy(ExecutionResult result) {
+		return result != null ? new ExecutionResult(result.getResultType(), result.getResultContent()) : null;
+	}
+}
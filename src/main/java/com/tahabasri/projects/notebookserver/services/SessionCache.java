@@ -0,0 +1,79 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+
+/**
+ * In-memory cache of interpreter contexts and sessions, placed in front of the
+ * repositories : lookups are answered from memory when possible and saves are
+ * written through to the database
+ * 
+ * @author Taha BASRI
+ *
+ */
+public interface SessionCache {
+
+	/**
+	 * gets an interpreter context by its interpreter name
+	 * 
+	 * @param interpreterName interpreter name
+	 * @return interpreter context, null if none was found
+	 */
+	InterpreterContext findContext(String interpreterName);
+
+	/**
+	 * gets a session of the given interpreter context
+	 * 
+	 * @param context   interpreter context
+	 * @param sessionId session identifier
+	 * @return session with its code lines loaded, null if none was found
+	 */
+	Session findSession(InterpreterContext context, Long sessionId);
+
+	/**
+	 * checks if a session exists without loading it in the cache, for callers
+	 * running outside of the session requests order : a session loaded while one
+	 * of its requests runs may miss the cell this request is about to append
+	 * 
+	 * @param context   interpreter context
+	 * @param sessionId session identifier
+	 * @return true if the session exists in the interpreter context, false
+	 *         otherwise
+	 */
+	boolean hasSession(InterpreterContext context, Long sessionId);
+
+	/**
+	 * saves a session (new or existing one) and caches the saved instance
+	 * 
+	 * @param session session to save
+	 * @return saved session
+	 */
+	Session saveSession(Session session);
+
+	/**
+	 * removes a session from the cache, the next lookup reads it from the database
+	 * 
+	 * @param context   interpreter context
+	 * @param sessionId session identifier
+	 */
+	void invalidateSession(InterpreterContext context, Long sessionId);
+
+	/**
+	 * appends a code line to the session, persisted as a new session cell
+	 * 
+	 * @param session session to update
+	 * @param code    code line to append
+	 */
+	void appendCode(Session session, String code);
+
+	/**
+	 * @return interpreter contexts cache usage counters
+	 */
+	CacheStatistics getContextStatistics();
+
+	/**
+	 * @return sessions cache usage counters
+	 */
+	CacheStatistics getSessionStatistics();
+}
@@ -0,0 +1,170 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.cache.LruCache;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+
+@Service
+public class SessionCacheImpl implements SessionCache {
+	private static final Logger logger = LogManager.getLogger(SessionCache.class);
+
+	@Autowired
+	private InterpreterContextRepository contextRepository;
+	@Autowired
+	private SessionRepository sessionRepository;
+	@Autowired
+	private SessionCellRepository sessionCellRepository;
+	@Autowired
+	private SessionCellWriter sessionCellWriter;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Maximum cached sessions count
+	 */
+	@Value("${cache.session.max-size:10000}")
+	private int sessionMaxSize;
+
+	/**
+	 * Time to live of cached entries after their last access, in milliseconds
+	 */
+	@Value("${cache.session.ttl:600000}")
+	private long ttl;
+
+	private LruCache<String, InterpreterContext> contexts;
+	private LruCache<String, Session> sessions;
+	private TransactionTemplate readOnlyTransaction;
+
+	@PostConstruct
+	public void initializeCaches() {
+		logger.info("Initializing sessions cache of size " + sessionMaxSize + " and ttl " + ttl + "ms");
+		contexts = new LruCache<>(100, ttl);
+		sessions = new LruCache<>(sessionMaxSize, ttl);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+	}
+
+	@Override
+	public InterpreterContext findContext(String interpreterName) {
+		return contexts.get(interpreterName, contextRepository::findByInterpreterName);
+	}
+
+	/**
+	 * a session which is not cached is loaded in a read only transaction streaming
+	 * its cells, cached sessions are used outside of the transaction that loaded
+	 * them. Cached sessions are answered without any transaction. In write-behind
+	 * mode, the session cells still waiting for the flusher are merged with the
+	 * ones read from the database
+	 */
+	@Override
+	public Session findSession(InterpreterContext context, Long sessionId) {
+		return sessions.get(sessionKey(context.getInterpreterName(), sessionId), key -> {
+			logger.debug("Session '" + key + "' is not cached, loading it");
+			// read before the database, a cell inserted meanwhile is then found in one or the other
+			Map<Integer, String> unflushedCells = sessionCellWriter.getUnflushedCells(sessionId);
+			return readOnlyTransaction.execute(status -> {
+				Session session = sessionRepository.findByIdAndInterpreterName(sessionId,
+						context.getInterpreterName());
+				if (session != null) {
+					session.setCodeLines(unflushedCells.isEmpty() ? readCells(sessionId)
+							: readCells(sessionId, unflushedCells));
+				}
+				return session;
+			});
+		});
+	}
+
+	/**
+	 * a cached session is answered from memory, otherwise the session is read
+	 * without its cells and is not cached
+	 */
+	@Override
+	public boolean hasSession(InterpreterContext context, Long sessionId) {
+		return sessions.get(sessionKey(context.getInterpreterName(), sessionId)) != null
+				|| sessionRepository.findByIdAndInterpreterName(sessionId, context.getInterpreterName()) != null;
+	}
+
+	private List<String> readCells(Long sessionId) {
+		try (Stream<String> cells = sessionCellRepository.streamCodeBySessionId(sessionId)) {
+			return cells.collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	/**
+	 * reads the session cells and merges them with the given cells by index
+	 */
+	private List<String> readCells(Long sessionId, Map<Integer, String> unflushedCells) {
+		Map<Integer, String> cells = new TreeMap<>(unflushedCells);
+		try (Stream<Object[]> persistedCells = sessionCellRepository.streamCellsBySessionId(sessionId)) {
+			persistedCells.forEach(cell -> cells.putIfAbsent((Integer) cell[0], (String) cell[1]));
+		}
+		return new ArrayList<>(cells.values());
+	}
+
+	/**
+	 * runs in its own short transaction, callers do not hold one while their
+	 * request executes
+	 */
+	@Override
+	@Transactional
+	public Session saveSession(Session session) {
+		Session savedSession = sessionRepository.saveAndFlush(session);
+		sessions.put(sessionKey(savedSession.getContext().getInterpreterName(), savedSession.getId()), savedSession);
+		return savedSession;
+	}
+
+	@Override
+	public void invalidateSession(InterpreterContext context, Long sessionId) {
+		sessions.invalidate(sessionKey(context.getInterpreterName(), sessionId));
+	}
+
+	/**
+	 * the cell index is the number of code lines already in the session, requests
+	 * of a same session are executed one at a time so indexes never collide. In
+	 * write-behind mode the cell is only queued, the cached session keeps it in
+	 * memory until it is flushed. In sync mode the cell is saved in the repository
+	 * own short transaction
+	 */
+	@Override
+	public void appendCode(Session session, String code) {
+		List<String> codeLines = session.getCodeLines();
+		sessionCellWriter.append(session, codeLines.size(), code);
+		codeLines.add(code);
+	}
+
+	@Override
+	public CacheStatistics getContextStatistics() {
+		return contexts.getStatistics();
+	}
+
+	@Override
+	public CacheStatistics getSessionStatistics() {
+		return sessions.getStatistics();
+	}
+
+	private String sessionKey(String interpreterName, Long sessionId) {
+		return interpreterName + "/" + sessionId;
+	}
+}
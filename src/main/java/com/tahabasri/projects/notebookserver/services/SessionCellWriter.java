@@ -0,0 +1,249 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.models.entities.SessionCell;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
+
+/**
+ * Persists session cells, either right away ('sync' mode) or in the background
+ * ('write-behind' mode) : cells of all sessions are queued and inserted by JDBC
+ * batches, every "session.persistence.flush-interval" milliseconds or as soon
+ * as "session.persistence.flush-size" cells are waiting. Pending cells are
+ * flushed when the application stops. Readers loading a session merge the cells
+ * still pending for it, so they never wait for a flush.
+ *
+ * A failed batch is retried cell by cell : cells which can never be inserted
+ * (session deleted meanwhile, duplicate index) are logged and dropped, so they
+ * do not block the cells queued with them. Other failures (database not
+ * reachable) keep the cells for the next flush
+ *
+ * @author Taha BASRI
+ *
+ */
+@Component
+public class SessionCellWriter {
+	private static final Logger logger = LogManager.getLogger(SessionCellWriter.class);
+
+	public static final String MODE_SYNC = "sync";
+	public static final String MODE_WRITE_BEHIND = "write-behind";
+
+	private static final String INSERT_CELL = "insert into session_cell (session_id, cell_index, code) values (?, ?, ?)";
+
+	@Autowired
+	private SessionCellRepository sessionCellRepository;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${session.persistence.mode:" + MODE_SYNC + "}")
+	private String mode;
+
+	@Value("${session.persistence.flush-interval:200}")
+	private long flushInterval;
+
+	@Value("${session.persistence.flush-size:500}")
+	private int flushSize;
+
+	/**
+	 * Cells waiting to be inserted, write-behind mode only
+	 */
+	private final BlockingQueue<Object[]> pendingCells = new LinkedBlockingQueue<>();
+	/**
+	 * Code of the cells not inserted yet by session and cell index, a cell is
+	 * removed once it is inserted or dropped. Write-behind mode only
+	 */
+	private final Map<Long, Map<Integer, String>> unflushedCells = new ConcurrentHashMap<>();
+	/**
+	 * Raised when a flush is already requested because enough cells are waiting
+	 */
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	private ScheduledExecutorService flusher;
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	public void startFlusher() {
+		if (isWriteBehind()) {
+			logger.info("Session cells are persisted in background every " + flushInterval + "ms or "
+					+ flushSize + " cells");
+			transactionTemplate = new TransactionTemplate(transactionManager);
+			// cells are written in their own transaction, never in the one of a caller
+			transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "session-cell-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * stops the background flusher and writes all pending cells
+	 */
+	@PreDestroy
+	public void stopFlusher() throws InterruptedException {
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+			logger.info("Flushing " + pendingCells.size() + " pending session cells before shutdown");
+			flush();
+		}
+	}
+
+	/**
+	 * persists a new session cell, or queues it in write-behind mode
+	 *
+	 * @param session   cell session
+	 * @param cellIndex cell position in session
+	 * @param code      cell code
+	 */
+	public void append(Session session, int cellIndex, String code) {
+		if (!isWriteBehind()) {
+			sessionCellRepository.save(new SessionCell(session, cellIndex, code));
+			return;
+		}
+
+		unflushedCells.compute(session.getId(), (sessionId, cells) -> {
+			Map<Integer, String> sessionCells = cells != null ? cells : new ConcurrentSkipListMap<>();
+			sessionCells.put(cellIndex, code);
+			return sessionCells;
+		});
+		pendingCells.add(new Object[] { session.getId(), cellIndex, code });
+		if (pendingCells.size() >= flushSize && flushRequested.compareAndSet(false, true)) {
+			flusher.execute(this::flushSafely);
+		}
+	}
+
+	/**
+	 * inserts all pending cells, called by the background flusher and on shutdown.
+	 * Failures are logged, not thrown, cells which are not inserted are kept for
+	 * the next flush
+	 *
+	 * @return true if all pending cells were inserted or dropped, false if some
+	 *         are kept for the next flush
+	 */
+	public synchronized boolean flush() {
+		List<Object[]> batch = new ArrayList<>(flushSize);
+		while (pendingCells.drainTo(batch, flushSize) > 0) {
+			List<Object[]> cells = batch;
+			try {
+				transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_CELL, cells));
+				cells.forEach(this::flushed);
+				logger.debug("Flushed " + cells.size() + " session cells");
+			} catch (RuntimeException e) {
+				logger.warn("Error persisting " + cells.size() + " session cells, inserting them one by one : "
+						+ e.getMessage());
+				if (!insertOneByOne(cells)) {
+					return false;
+				}
+			}
+			batch = new ArrayList<>(flushSize);
+		}
+		return true;
+	}
+
+	/**
+	 * inserts cells of a failed batch one by one, cells violating a constraint are
+	 * dropped, others are kept for the next flush as soon as one of them fails
+	 *
+	 * @param cells cells of the failed batch
+	 * @return true if no cell is kept for the next flush
+	 */
+	private boolean insertOneByOne(List<Object[]> cells) {
+		for (int i = 0; i < cells.size(); i++) {
+			Object[] cell = cells.get(i);
+			try {
+				transactionTemplate.execute(status -> jdbcTemplate.update(INSERT_CELL, cell));
+				flushed(cell);
+			} catch (DataIntegrityViolationException e) {
+				logger.error("Dropping cell " + cell[1] + " of session " + cell[0] + ", it can not be persisted : "
+						+ e.getMessage());
+				flushed(cell);
+			} catch (RuntimeException e) {
+				// cells order does not matter as each one holds its index
+				pendingCells.addAll(cells.subList(i, cells.size()));
+				logger.error("Error persisting session cells, " + pendingCells.size()
+						+ " cells are kept for next flush : " + e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * drops the pending cells of a session, called before the session is deleted
+	 *
+	 * @param sessionId session identifier
+	 */
+	public void discard(Long sessionId) {
+		if (isWriteBehind()) {
+			pendingCells.removeIf(cell -> sessionId.equals(cell[0]));
+			unflushedCells.remove(sessionId);
+		}
+	}
+
+	/**
+	 * gets the cells of a session which are not inserted yet. Must be called before
+	 * reading the session cells from the database : a cell is forgotten only once
+	 * it is inserted, so each cell is either returned here or read from the
+	 * database
+	 *
+	 * @param sessionId session identifier
+	 * @return code of the cells not inserted yet by cell index, empty if there is
+	 *         none
+	 */
+	public Map<Integer, String> getUnflushedCells(Long sessionId) {
+		Map<Integer, String> cells = unflushedCells.get(sessionId);
+		return cells != null ? new TreeMap<>(cells) : Collections.<Integer, String>emptyMap();
+	}
+
+	public boolean isWriteBehind() {
+		return MODE_WRITE_BEHIND.equals(mode);
+	}
+
+	/**
+	 * forgets an inserted or dropped cell, the session entry is removed with its
+	 * last cell
+	 */
+	private void flushed(Object[] cell) {
+		unflushedCells.computeIfPresent((Long) cell[0], (sessionId, cells) -> {
+			cells.remove(cell[1]);
+			return cells.isEmpty() ? null : cells;
+		});
+	}
+
+	private void flushSafely() {
+		flushRequested.set(false);
+		flush();
+	}
+}
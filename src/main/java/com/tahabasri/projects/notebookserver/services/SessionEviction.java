@@ -0,0 +1,44 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+
+/**
+ * Removes sessions which are not used anymore : sessions idle for longer than
+ * the idle timeout, and least recently used sessions of an interpreter holding
+ * more sessions than its cap. An evicted session is deleted with its cells, and
+ * the state kept for it by its interpreter is released
+ *
+ * @author Taha BASRI
+ *
+ */
+public interface SessionEviction {
+
+	/**
+	 * records that a request used the session, access times are written to the
+	 * database in background
+	 *
+	 * @param session used session
+	 */
+	void sessionAccessed(Session session);
+
+	/**
+	 * records a new session, least recently used sessions of its interpreter are
+	 * evicted in background if the interpreter holds too many sessions
+	 *
+	 * @param session new session
+	 */
+	void sessionCreated(Session session);
+
+	/**
+	 * writes access times, evicts idle sessions then enforces sessions caps, called
+	 * periodically in background
+	 *
+	 * @return evicted sessions count
+	 */
+	int evictSessions();
+
+	/**
+	 * @return sessions evicted since application start
+	 */
+	long getEvictedCount();
+}
@@ -0,0 +1,329 @@
+package com.tahabasri.projects.notebookserver.services;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
+
+/**
+ * Session eviction running on a background reaper thread : every
+ * "session.eviction.interval" milliseconds, the reaper writes the access times
+ * recorded since its last run, evicts sessions idle for longer than
+ * "session.eviction.idle-timeout" and evicts least recently used sessions of
+ * interpreters holding more than their cap ("interpreter.<i>name</i>.max-sessions",
+ * or "session.eviction.max-sessions" for all interpreters). Caps are also
+ * checked right after a session is created. Both are disabled by default,
+ * evicting a session loses its state, so deployments opt in by setting them.
+ *
+ * A session is only evicted while none of its requests is pending or running,
+ * requests arriving during the eviction wait for it in the session mailbox. A
+ * busy session is kept until the next run, a later request with the identifier
+ * of an evicted session starts a new session
+ *
+ * @author Taha BASRI
+ *
+ */
+@Service
+public class SessionEvictionImpl implements SessionEviction {
+	private static final Logger logger = LogManager.getLogger(SessionEviction.class);
+
+	/**
+	 * Sessions read from the database at once when searching sessions to evict
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	@Autowired
+	private InterpreterContextRepository contextRepository;
+	@Autowired
+	private SessionRepository sessionRepository;
+	@Autowired
+	private SessionCellRepository sessionCellRepository;
+	@Autowired
+	private SessionCellWriter sessionCellWriter;
+	@Autowired
+	private SessionCache sessionCache;
+	@Autowired
+	private InterpreterLookup interpreterLookup;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private ExecutionService executionService;
+
+	/**
+	 * Time in milliseconds after which an unused session is evicted, 0 or less to
+	 * keep idle sessions (default)
+	 */
+	@Value("${session.eviction.idle-timeout:0}")
+	private long idleTimeout;
+
+	/**
+	 * Maximum sessions count of each interpreter, 0 or less for no cap (default)
+	 */
+	@Value("${session.eviction.max-sessions:0}")
+	private int maxSessions;
+
+	/**
+	 * Time in milliseconds between two reaper runs, 0 or less to disable the
+	 * periodic run
+	 */
+	@Value("${session.eviction.interval:60000}")
+	private long interval;
+
+	/**
+	 * Last access time of sessions used since the reaper last ran
+	 */
+	private final Map<Long, Long> accessTimes = new ConcurrentHashMap<>();
+	/**
+	 * Interpreters which cap check is already waiting for the reaper
+	 */
+	private final Set<String> pendingCapChecks = ConcurrentHashMap.newKeySet();
+	private final LongAdder evictions = new LongAdder();
+
+	private ScheduledExecutorService reaper;
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	public void startReaper() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (interval > 0) {
+			logger.info("Sessions idle for " + idleTimeout + "ms are evicted, at most " + maxSessions
+					+ " sessions are kept by interpreter, checked every " + interval + "ms");
+			reaper.scheduleWithFixedDelay(this::evictSessionsSafely, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stopReaper() {
+		reaper.shutdownNow();
+	}
+
+	@Override
+	public void sessionAccessed(Session session) {
+		long now = System.currentTimeMillis();
+		session.setLastAccessTime(now);
+		accessTimes.merge(session.getId(), now, Math::max);
+	}
+
+	@Override
+	public void sessionCreated(Session session) {
+		InterpreterContext context = session.getContext();
+		if (context != null && getMaxSessions(context) > 0 && pendingCapChecks.add(context.getInterpreterName())) {
+			reaper.execute(() -> {
+				pendingCapChecks.remove(context.getInterpreterName());
+				try {
+					evictLeastRecentlyUsed(context);
+				} catch (RuntimeException e) {
+					logger.error("Error evicting sessions of '" + context.getInterpreterName() + "' interpreter : "
+							+ e.getMessage());
+				}
+			});
+		}
+	}
+
+	@Override
+	public int evictSessions() {
+		writeAccessTimes();
+		int evicted = evictIdleSessions();
+		for (InterpreterContext context : contextRepository.findAll()) {
+			evicted += evictLeastRecentlyUsed(context);
+		}
+		if (evicted > 0) {
+			logger.info("Evicted " + evicted + " sessions");
+		}
+		return evicted;
+	}
+
+	@Override
+	public long getEvictedCount() {
+		return evictions.sum();
+	}
+
+	private void evictSessionsSafely() {
+		try {
+			evictSessions();
+		} catch (RuntimeException e) {
+			logger.error("Error evicting sessions, retrying on next run : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * writes recorded access times to the database, so idle and least recently used
+	 * sessions can be searched by query
+	 */
+	private void writeAccessTimes() {
+		for (Long sessionId : accessTimes.keySet()) {
+			Long accessTime = accessTimes.remove(sessionId);
+			if (accessTime != null) {
+				writeAccessTime(sessionId, accessTime);
+			}
+		}
+	}
+
+	private void writeAccessTime(Long sessionId, long accessTime) {
+		transactionTemplate.execute(status -> sessionRepository.updateLastAccessTime(sessionId, accessTime));
+	}
+
+	/**
+	 * evicts sessions not accessed since the idle timeout, sessions accessed since
+	 * access times were written are kept
+	 *
+	 * @return evicted sessions count
+	 */
+	private int evictIdleSessions() {
+		if (idleTimeout <= 0) {
+			return 0;
+		}
+		long idleSince = System.currentTimeMillis() - idleTimeout;
+		int evicted = 0;
+		// busy sessions still match the query, they are read again and skipped
+		Set<Long> busySessions = new HashSet<>();
+		boolean handled = true;
+		while (handled) {
+			handled = false;
+			List<Session> sessions = sessionRepository.findByLastAccessTimeLessThan(idleSince,
+					new PageRequest(0, busySessions.size() + BATCH_SIZE));
+			for (Session session : sessions) {
+				if (busySessions.contains(session.getId())) {
+					continue;
+				}
+				handled = true;
+				Long accessTime = accessTimes.remove(session.getId());
+				if (accessTime != null && accessTime >= idleSince) {
+					writeAccessTime(session.getId(), accessTime);
+				} else if (evict(session)) {
+					evicted++;
+				} else {
+					busySessions.add(session.getId());
+				}
+			}
+			// handled sessions do not match the query anymore, next ones are on first page
+		}
+		return evicted;
+	}
+
+	/**
+	 * evicts least recently used sessions of an interpreter until it holds no more
+	 * sessions than its cap
+	 *
+	 * @param context interpreter context
+	 * @return evicted sessions count
+	 */
+	private synchronized int evictLeastRecentlyUsed(InterpreterContext context) {
+		int max = getMaxSessions(context);
+		long excess = max > 0 ? sessionRepository.countByContext(context) - max : 0;
+		if (excess <= 0) {
+			return 0;
+		}
+		logger.info("Interpreter '" + context.getInterpreterName() + "' holds " + excess
+				+ " sessions more than its cap, evicting least recently used ones");
+		writeAccessTimes();
+		int evicted = 0;
+		Set<Long> busySessions = new HashSet<>();
+		boolean handled = true;
+		while (handled && evicted < excess) {
+			handled = false;
+			List<Session> sessions = sessionRepository.findByContextOrderByLastAccessTimeAsc(context,
+					new PageRequest(0, busySessions.size() + (int) Math.min(BATCH_SIZE, excess - evicted)));
+			for (Session session : sessions) {
+				if (busySessions.contains(session.getId()) || evicted >= excess) {
+					continue;
+				}
+				handled = true;
+				if (evict(session)) {
+					evicted++;
+				} else {
+					busySessions.add(session.getId());
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * evicts the session unless one of its requests is pending or running
+	 *
+	 * @param session session to evict
+	 * @return true if the session was evicted, false if it is busy
+	 */
+	private boolean evict(Session session) {
+		InterpreterContext context = session.getContext();
+		if (context == null) {
+			delete(session);
+			return true;
+		}
+		boolean evicted = executionService.runIfSessionIdle(context.getInterpreterName(),
+				String.valueOf(session.getId()), () -> delete(session));
+		if (!evicted) {
+			logger.debug("Session '" + session.getId() + "' is in use, it is not evicted");
+		}
+		return evicted;
+	}
+
+	/**
+	 * deletes the session and its cells, removes it from cache and releases the
+	 * state kept by its interpreter
+	 *
+	 * @param session session to delete
+	 */
+	private void delete(Session session) {
+		Long sessionId = session.getId();
+		InterpreterContext context = session.getContext();
+		logger.debug("Evicting session '" + sessionId + "'");
+
+		// cells waiting for write-behind would reference a deleted session
+		sessionCellWriter.discard(sessionId);
+		transactionTemplate.execute(status -> {
+			sessionCellRepository.deleteBySessionId(sessionId);
+			return sessionRepository.deleteSession(sessionId);
+		});
+		accessTimes.remove(sessionId);
+		evictions.increment();
+
+		if (context != null) {
+			sessionCache.invalidateSession(context, sessionId);
+			Interpreter interpreter = interpreterLookup.getInterpreter(context);
+			if (interpreter != null) {
+				interpreter.releaseSession(interpreterLookup.getDescriptor(context), session.getStateKey());
+			}
+		}
+	}
+
+	/**
+	 * @return sessions cap of the interpreter, its own "max-sessions" property if
+	 *         set, the global cap otherwise
+	 */
+	private int getMaxSessions(InterpreterContext context) {
+		String value = interpreterLookup.getDescriptor(context).getProperty("max-sessions");
+		return value != null ? Integer.parseInt(value.trim()) : maxSessions;
+	}
+}
@@ -0,0 +1,226 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+
+/**
+ * Immutable data needed by an interpreter to execute one request : interpreter
+ * descriptor (executor path and properties) and request session. A new
+ * context is created for each request, so interpreter instances can be shared
+ * between concurrent requests
+ *
+ * @author Taha BASRI
+ *
+ */
+public final class ExecutionContext {
+
+	/**
+	 * Interpreter data resolved once, shared by all requests
+	 */
+	private final InterpreterDescriptor descriptor;
+	/**
+	 * Request session identifier, null if no session is needed
+	 */
+	private final String sessionId;
+	/**
+	 * Request session state key, null if no session is needed
+	 */
+	private final String sessionStateKey;
+	/**
+	 * Session code lines, read only when the interpreter needs them
+	 */
+	private final Supplier<List<String>> sessionCode;
+	/**
+	 * Receives output while it is produced, null if output is returned at the end
+	 * of the execution only
+	 */
+	private final OutputListener outputListener;
+	/**
+	 * Receives measures taken while executing the request
+	 */
+	private final InterpreterMetrics metrics;
+
+	/**
+	 * creates the execution context of a request
+	 *
+	 * @param context    interpreter context
+	 * @param properties interpreter properties
+	 * @param session    request session, null if no session is needed
+	 */
+	public ExecutionContext(InterpreterContext context, Properties properties, Session session) {
+		this(new InterpreterDescriptor(context, null, properties), session);
+	}
+
+	/**
+	 * creates the execution context of a request
+	 *
+	 * @param descriptor interpreter descriptor
+	 * @param session    request session, null if no session is needed
+	 */
+	public ExecutionContext(InterpreterDescriptor descriptor, Session session) {
+		this(descriptor, session, null);
+	}
+
+	/**
+	 * creates the execution context of a request which output is streamed
+	 *
+	 * @param descriptor     interpreter descriptor
+	 * @param session        request session, null if no session is needed
+	 * @param outputListener receives output while it is produced, null to get the
+	 *                       whole output in execution result
+	 */
+	public ExecutionContext(InterpreterDescriptor descriptor, Session session, OutputListener outputListener) {
+		this(descriptor, session, outputListener, null);
+	}
+
+	/**
+	 * creates the execution context of a request which execution is measured
+	 *
+	 * @param descriptor     interpreter descriptor
+	 * @param session        request session, null if no session is needed
+	 * @param outputListener receives output while it is produced, null to get the
+	 *                       whole output in execution result
+	 * @param metrics        interpreter metrics, null to take no measures
+	 */
+	public ExecutionContext(InterpreterDescriptor descriptor, Session session, OutputListener outputListener,
+			InterpreterMetrics metrics) {
+		this.descriptor = descriptor;
+		this.outputListener = outputListener;
+		this.metrics = metrics != null ? metrics : InterpreterMetrics.NONE;
+		if (session != null) {
+			this.sessionId = String.valueOf(session.getId());
+			this.sessionStateKey = session.getStateKey();
+			this.sessionCode = () -> session.getCodeLines() != null
+					? Collections.unmodifiableList(session.getCodeLines())
+					: Collections.emptyList();
+		} else {
+			this.sessionId = null;
+			this.sessionStateKey = null;
+			this.sessionCode = Collections::emptyList;
+		}
+	}
+
+	public InterpreterDescriptor getDescriptor() {
+		return descriptor;
+	}
+
+	public String getInterpreterName() {
+		return descriptor.getInterpreterName();
+	}
+
+	public String getInterpreterPath() {
+		return descriptor.getInterpreterPath();
+	}
+
+	/**
+	 * @return interpreter timeout in milliseconds, default one if none was set
+	 */
+	public int getTimeout() {
+		return descriptor.getTimeout();
+	}
+
+	/**
+	 * @return interpreter code separator, default one if none was set
+	 */
+	public String getSeparator() {
+		return descriptor.getSeparator();
+	}
+
+	/**
+	 * @return output bytes kept in memory before spilling to disk
+	 */
+	public int getOutputMemoryLimit() {
+		return descriptor.getOutputMemoryLimit();
+	}
+
+	/**
+	 * @return maximum output bytes returned from output start
+	 */
+	public int getOutputHeadSize() {
+		return descriptor.getOutputHeadSize();
+	}
+
+	/**
+	 * @return maximum output bytes returned from output end
+	 */
+	public int getOutputTailSize() {
+		return descriptor.getOutputTailSize();
+	}
+
+	/**
+	 * reads an interpreter specific property (properties that stars with
+	 * "interpreter.<i>interpreterName</i>.<b>key</b>")
+	 *
+	 * @param key only suffix parameter, prefix is pre-defined by the interpreter
+	 *            name
+	 * @return property value if found, null otherwise
+	 */
+	public String getProperty(String key) {
+		return descriptor.getProperty(key);
+	}
+
+	/**
+	 * @return true if the request is executed within a session, false otherwise
+	 */
+	public boolean hasSession() {
+		return sessionId != null;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @return key of the state kept by the interpreter for the request session, see
+	 *         {@link Session#getStateKey()}
+	 */
+	public String getSessionStateKey() {
+		return sessionStateKey;
+	}
+
+	/**
+	 * gets all code lines saved in request session
+	 *
+	 * @return session code lines, empty if no session is needed
+	 */
+	public List<String> getSessionCode() {
+		return sessionCode.get();
+	}
+
+	/**
+	 * @return session code lines supplier, to be read lazily
+	 */
+	public Supplier<List<String>> getSessionCodeSupplier() {
+		return sessionCode;
+	}
+
+	/**
+	 * @return true if output must be sent to the output listener while it is
+	 *         produced, instead of being returned in execution result
+	 */
+	public boolean isStreaming() {
+		return outputListener != null;
+	}
+
+	public OutputListener getOutputListener() {
+		return outputListener;
+	}
+
+	/**
+	 * @return interpreter metrics, never null
+	 */
+	public InterpreterMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionContext [interpreterName=" + getInterpreterName() + ", interpreterPath="
+				+ getInterpreterPath() + ", sessionId=" + sessionId + ", streaming=" + isStreaming() + "]";
+	}
+}
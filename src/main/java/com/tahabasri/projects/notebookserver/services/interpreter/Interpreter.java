@@ -1,15 +1,17 @@
 package com.tahabasri.projects.notebookserver.services.interpreter;
 
 import java.io.File;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.tahabasri.projects.notebookserver.models.ExecutionResult;
 import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
 import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
-import com.tahabasri.projects.notebookserver.models.entities.Session;
 
 /**
  * Main interpreter class, holds common attributes and methods used by all
@@ -30,16 +32,19 @@ public abstract class Interpreter {
 	 * Default interpreter code separator
 	 */
 	public static final String DEFAULT_SEPARATOR = "|";
-
 	/**
-	 * Interpreter specific properties: all the properties that stars with
-	 * "interpreter.<i><b>interpreterName</i></b>"
+	 * Default output bytes kept in memory before spilling to disk
+	 */
+	public static final int DEFAULT_OUTPUT_MEMORY_LIMIT = 256 * 1024;
+	/**
+	 * Default output bytes returned from output start
 	 */
-	private Properties properties;
+	public static final int DEFAULT_OUTPUT_HEAD_SIZE = 512 * 1024;
 	/**
-	 * Request session, to be modified by each request
+	 * Default output bytes returned from output end
 	 */
-	private Session session;
+	public static final int DEFAULT_OUTPUT_TAIL_SIZE = 512 * 1024;
+
 	/**
 	 * Interpreter name
 	 */
@@ -77,64 +82,108 @@ public abstract class Interpreter {
 		return executor.exists();
 	}
 
-	/**
-	 * reads an interpreter specific property (properties that stars with
-	 * "interpreter.<i>interpreterName</i>.<b>key</b>")
-	 * 
-	 * @param key only suffix parameter, prefix is pre-defined by the interpreter
-	 *            context
-	 * @return property value if found, null otherwise
-	 */
-	protected String getProperty(String key) {
-		String prefix = "interpreter." + name + ".";
-		if (key != null && getProperties() != null) {
-			String fullKey = prefix + key;
-			logger.info("Reading property : " + fullKey);
-			return getProperties().getProperty(fullKey);
-		}
-		logger.warn("No properties file");
-		return null;
-	}
-
 	/**
 	 * interprets the request depending on interpreter specific implementation (to
 	 * be defined in a concrete class implementing this service), if the request has
 	 * good syntax, the interpreter process is launched in background.
 	 * 
 	 * A result object must be passed as an argument which will be filled after
-	 * execution and depending on the final result
+	 * execution and depending on the final result. Interpreter instances are shared
+	 * by concurrent requests, all request specific data comes from the execution
+	 * context
 	 * 
 	 * @param interpretationRequest the user parsed request
-	 * @param context               interpreter context
+	 * @param context               request execution context (properties and
+	 *                              session)
 	 * @param result                object to be populated with execution result
 	 * 
 	 * @return true if the interpretation has been executed successfully, false
 	 *         otherwise
 	 */
-	public abstract boolean interpret(InterpretationRequest interpretationRequest, InterpreterContext context,
+	public abstract boolean interpret(InterpretationRequest interpretationRequest, ExecutionContext context,
 			ExecutionResult result);
 
 	/**
-	 * gets all interpreter properties that stars with
-	 * "interpreter.<i><b>interpreterName</i></b>" (to be used by the interpreter
-	 * specific implementation as needed)
-	 * 
-	 * @return interpreter properties
+	 * tells if the interpreter executes a batch of cells more efficiently than
+	 * separate requests (in a single process call for example), otherwise batch
+	 * cells are interpreted one by one as separate requests. This is only an
+	 * optimisation hint, {@link #interpretBatch(List, ExecutionContext, boolean)}
+	 * works for every interpreter
+	 *
+	 * @param context request execution context (properties and session)
+	 * @return true if batches should be given to
+	 *         {@link #interpretBatch(List, ExecutionContext, boolean)}, false
+	 *         otherwise
+	 */
+	public boolean supportsBatch(ExecutionContext context) {
+		return false;
+	}
+
+	/**
+	 * interprets code cells one after the other in a single call, each cell gets
+	 * its own result. The default implementation interprets each cell with
+	 * {@link #interpret(InterpretationRequest, ExecutionContext, ExecutionResult)}
+	 * in order, interpreters keeping state between calls override it to run the
+	 * whole batch at once, each cell seeing the state left by the previous ones
+	 *
+	 * @param cells       code cells, in execution order
+	 * @param context     request execution context (properties and session)
+	 * @param stopOnError true to skip the cells following a failed one, false to
+	 *                    execute all of them
+	 * @return one result by executed cell
+	 */
+	public List<ExecutionResult> interpretBatch(List<String> cells, ExecutionContext context, boolean stopOnError) {
+		List<ExecutionResult> results = new ArrayList<>(cells.size());
+		for (String cell : cells) {
+			InterpretationRequest interpretationRequest = new InterpretationRequest(
+					new UserRequestInput(cell, context.getSessionId()), name, cell);
+			ExecutionResult result = new ExecutionResult();
+			boolean interpretation = interpret(interpretationRequest, context, result);
+			results.add(result);
+			if (!interpretation && stopOnError) {
+				break;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * prepares the interpreter before its first request (background processes for
+	 * example), called once on application start for each known interpreter
+	 *
+	 * @param context execution context without session, holds interpreter
+	 *                properties
 	 */
-	protected Properties getProperties() {
-		return properties;
+	public void warmUp(ExecutionContext context) {
 	}
 
-	public void setProperties(Properties properties) {
-		this.properties = properties;
+	/**
+	 * releases resources held by the interpreter for one session (state kept by a
+	 * background process for example), called when the session is evicted
+	 *
+	 * @param descriptor interpreter descriptor
+	 * @param sessionKey evicted session state key, see
+	 *                   {@link ExecutionContext#getSessionStateKey()}
+	 */
+	public void releaseSession(InterpreterDescriptor descriptor, String sessionKey) {
 	}
 
-	protected Session getSession() {
-		return session;
+	/**
+	 * releases resources left by a previous run for sessions which do not exist
+	 * anymore (files kept by the interpreter for example), called once on
+	 * application start before the interpreter is warmed up
+	 *
+	 * @param descriptor  interpreter descriptor
+	 * @param sessionKeys state keys of the existing sessions of the interpreter
+	 */
+	public void retainSessions(InterpreterDescriptor descriptor, Set<String> sessionKeys) {
 	}
 
-	public void setSession(Session session) {
-		this.session = session;
+	/**
+	 * releases resources held by the interpreter (background processes for
+	 * example), called once when the application stops
+	 */
+	public void shutdown() {
 	}
 
 }
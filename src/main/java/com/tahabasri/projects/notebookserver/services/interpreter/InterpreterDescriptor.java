@@ -0,0 +1,178 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.lang.reflect.Constructor;
+import java.util.Objects;
+import java.util.Properties;
+
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+
+/**
+ * Immutable interpreter data resolved once instead of on each request :
+ * implementation constructor, executor path and interpreter properties with
+ * their typed values (timeout, separator)
+ *
+ * @author Taha BASRI
+ *
+ */
+public final class InterpreterDescriptor {
+
+	private final String interpreterName;
+	private final String interpreterPath;
+	/**
+	 * Implementation constructor taking the interpreter context, null if no
+	 * implementation was found
+	 */
+	private final Constructor<? extends Interpreter> constructor;
+	/**
+	 * Interpreter specific properties: all the properties that stars with
+	 * "interpreter.<i><b>interpreterName</i></b>"
+	 */
+	private final Properties properties;
+	private final int timeout;
+	private final String separator;
+	/**
+	 * Output bytes kept in memory before spilling to disk
+	 */
+	private final int outputMemoryLimit;
+	/**
+	 * Output bytes returned from output start and end, the middle of larger
+	 * outputs is truncated
+	 */
+	private final int outputHeadSize;
+	private final int outputTailSize;
+
+	/**
+	 * @param context     interpreter context
+	 * @param constructor implementation constructor, null if none was found
+	 * @param properties  interpreter properties
+	 */
+	public InterpreterDescriptor(InterpreterContext context, Constructor<? extends Interpreter> constructor,
+			Properties properties) {
+		this.interpreterName = context.getInterpreterName();
+		this.interpreterPath = context.getInterpreterPath();
+		this.constructor = constructor;
+		this.properties = new Properties();
+		if (properties != null) {
+			this.properties.putAll(properties);
+		}
+
+		String timeoutValue = getProperty("timeout");
+		this.timeout = timeoutValue != null ? Integer.parseInt(timeoutValue.trim()) : Interpreter.DEFAULT_TIMEOUT;
+		String separatorValue = getProperty("separator");
+		this.separator = separatorValue != null ? separatorValue : Interpreter.DEFAULT_SEPARATOR;
+		this.outputMemoryLimit = getIntProperty("output.memory-limit", Interpreter.DEFAULT_OUTPUT_MEMORY_LIMIT);
+		this.outputHeadSize = getIntProperty("output.head-size", Interpreter.DEFAULT_OUTPUT_HEAD_SIZE);
+		this.outputTailSize = getIntProperty("output.tail-size", Interpreter.DEFAULT_OUTPUT_TAIL_SIZE);
+	}
+
+	public String getInterpreterName() {
+		return interpreterName;
+	}
+
+	public String getInterpreterPath() {
+		return interpreterPath;
+	}
+
+	public Constructor<? extends Interpreter> getConstructor() {
+		return constructor;
+	}
+
+	/**
+	 * @return true if an implementation was found for the interpreter
+	 */
+	public boolean hasImplementation() {
+		return constructor != null;
+	}
+
+	/**
+	 * @return interpreter timeout in milliseconds, default one if none was set
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return interpreter code separator, default one if none was set
+	 */
+	public String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @return output bytes kept in memory before spilling to disk
+	 */
+	public int getOutputMemoryLimit() {
+		return outputMemoryLimit;
+	}
+
+	/**
+	 * @return maximum output bytes returned from output start
+	 */
+	public int getOutputHeadSize() {
+		return outputHeadSize;
+	}
+
+	/**
+	 * @return maximum output bytes returned from output end
+	 */
+	public int getOutputTailSize() {
+		return outputTailSize;
+	}
+
+	/**
+	 * reads an interpreter specific property (properties that stars with
+	 * "interpreter.<i>interpreterName</i>.<b>key</b>")
+	 *
+	 * @param key only suffix parameter, prefix is pre-defined by the interpreter
+	 *            name
+	 * @return property value if found, null otherwise
+	 */
+	public String getProperty(String key) {
+		return key != null ? properties.getProperty("interpreter." + interpreterName + "." + key) : null;
+	}
+
+	private int getIntProperty(String key, int defaultValue) {
+		String value = getProperty(key);
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+
+	/**
+	 * @return a copy of interpreter properties
+	 */
+	public Properties getProperties() {
+		Properties copy = new Properties();
+		copy.putAll(properties);
+		return copy;
+	}
+
+	/**
+	 * checks if the descriptor still describes the given context
+	 *
+	 * @param context interpreter context
+	 * @return true if name and executor path are the same
+	 */
+	public boolean matches(InterpreterContext context) {
+		return Objects.equals(interpreterName, context.getInterpreterName())
+				&& Objects.equals(interpreterPath, context.getInterpreterPath());
+	}
+
+	/**
+	 * checks if an interpreter created from the other descriptor is configured as
+	 * one created from this descriptor
+	 *
+	 * @param other other descriptor of the same interpreter
+	 * @return true if executor path, implementation and properties are the same
+	 */
+	public boolean hasSameConfiguration(InterpreterDescriptor other) {
+		return other == this || other != null && Objects.equals(interpreterName, other.interpreterName)
+				&& Objects.equals(interpreterPath, other.interpreterPath)
+				&& Objects.equals(constructor, other.constructor) && properties.equals(other.properties);
+	}
+
+	@Override
+	public String toString() {
+		return "InterpreterDescriptor [interpreterName=" + interpreterName + ", interpreterPath=" + interpreterPath
+				+ ", implementation=" + (constructor != null ? constructor.getDeclaringClass().getName() : null)
+				+ ", timeout=" + timeout + ", separator=" + separator + "]";
+	}
+}
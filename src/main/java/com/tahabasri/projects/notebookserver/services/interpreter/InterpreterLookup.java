@@ -23,6 +23,16 @@ public interface InterpreterLookup {
 	 */
     Interpreter getInterpreter(InterpreterContext context);
 
+	/**
+	 * Gets the interpreter descriptor (implementation, path and properties),
+	 * resolved once then cached until application context is refreshed
+	 * 
+	 * @param context interpreter context
+	 * 
+	 * @return interpreter descriptor
+	 */
+	InterpreterDescriptor getDescriptor(InterpreterContext context);
+
 	/**
 	 * read all properties starting with "interpreter.<i><b>interpreterName</b></i>"
 	 * from application properties file
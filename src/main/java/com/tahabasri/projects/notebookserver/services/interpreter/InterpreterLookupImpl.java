@@ -2,14 +2,21 @@ package com.tahabasri.projects.notebookserver.services.interpreter;
 
 import java.lang.reflect.Constructor;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.StreamSupport;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.AbstractEnvironment;
 import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.Environment;
@@ -23,6 +30,8 @@ public class InterpreterLookupImpl implements InterpreterLookup {
 
 	private static final Logger logger = LogManager.getLogger(InterpreterLookup.class);
 
+	private static final String PROPERTIES_PREFIX = "interpreter.";
+
 	/**
 	 * Application whole context environment
 	 */
@@ -30,9 +39,43 @@ public class InterpreterLookupImpl implements InterpreterLookup {
 	private Environment env;
 
 	/**
-	 * All interpreter instances holder
+	 * All interpreter instances holder, interpreters are shared by concurrent
+	 * requests
+	 */
+	private final Map<String, InterpreterInstance> interpreterInstances = new ConcurrentHashMap<>();
+
+	/**
+	 * Interpreter descriptors, resolved on first use of each interpreter
+	 */
+	private final Map<String, InterpreterDescriptor> descriptors = new ConcurrentHashMap<>();
+
+	/**
+	 * Properties of all interpreters by interpreter name, read once from the
+	 * environment
 	 */
-	private final Map<String, Interpreter> interpreterInstances = new HashMap<>();
+	private volatile Map<String, Properties> interpreterProperties = Collections.emptyMap();
+
+	/**
+	 * reads interpreters properties on startup, and again each time the application
+	 * context is refreshed, cached descriptors are then resolved again. Instances of
+	 * interpreters which properties changed are shut down, they are created again
+	 * from the new properties on their next request
+	 */
+	@PostConstruct
+	@EventListener(ContextRefreshedEvent.class)
+	public void refreshDescriptors() {
+		logger.info("Reading interpreters properties");
+		interpreterProperties = readInterpretersProperties();
+		descriptors.clear();
+
+		for (Map.Entry<String, InterpreterInstance> entry : interpreterInstances.entrySet()) {
+			InterpreterDescriptor created = entry.getValue().descriptor;
+			if (!created.getProperties().equals(readPropertiesForInterpreter(created.getInterpreterName()))
+					&& interpreterInstances.remove(entry.getKey(), entry.getValue())) {
+				shutdown(entry.getValue(), "its properties changed");
+			}
+		}
+	}
 
 	/**
 	 * checks if the given implementation class exists by loading it by its fully
@@ -59,50 +102,154 @@ public class InterpreterLookupImpl implements InterpreterLookup {
 		}
 	}
 
+	/**
+	 * finds the implementation constructor taking the interpreter context
+	 * 
+	 * @param interpreterName interpreter name
+	 * @return implementation constructor, null if no implementation was found
+	 */
+	private Constructor<? extends Interpreter> getInterpreterConstructor(String interpreterName) {
+		Class<?> interpreterImpl = getInterpreterImplementationClass(interpreterName);
+		if (interpreterImpl == null || !Interpreter.class.isAssignableFrom(interpreterImpl)) {
+			return null;
+		}
+		try {
+			return interpreterImpl.asSubclass(Interpreter.class).getConstructor(InterpreterContext.class);
+		} catch (NoSuchMethodException e) {
+			logger.error("'" + interpreterName + "' interpreter implementation has no constructor taking its context");
+			return null;
+		}
+	}
+
+	@Override
+	public InterpreterDescriptor getDescriptor(InterpreterContext context) {
+		InterpreterDescriptor descriptor = descriptors.get(context.getInterpreterName());
+		if (descriptor != null && descriptor.matches(context)) {
+			return descriptor;
+		}
+		// resolved again if the interpreter context changed since it was cached
+		return descriptors.compute(context.getInterpreterName(),
+				(name, current) -> current != null && current.matches(context) ? current
+						: new InterpreterDescriptor(context, getInterpreterConstructor(name),
+								readPropertiesForInterpreter(name)));
+	}
+
 	@Override
 	public Interpreter getInterpreter(InterpreterContext context) {
-		logger.info("Searching for '" + context.getInterpreterName() + "' interpreter implementation");
-		Class<?> interpreterImpl = getInterpreterImplementationClass(context.getInterpreterName());
-		if (interpreterImpl != null) {
-			Interpreter interpreter;
+		InterpreterDescriptor descriptor = getDescriptor(context);
+		if (descriptor.hasImplementation()) {
 			String instanceName = context.getInterpreterName() + "Interpreter";
 
-			interpreter = interpreterInstances.get(instanceName);
-
-			if (interpreter != null) {
-				logger.info("An instance of '" + context.getInterpreterName() + "' interpreter was found");
-				return interpreter;
-			} else {
-				logger.warn("No instance of '" + context.getInterpreterName()
-						+ "' interpreter was found, creating one ...");
-				try {
-					Constructor<?> constructor = interpreterImpl
-							.getConstructor(InterpreterContext.class);
-					interpreter = (Interpreter) constructor.newInstance(context);
-					interpreterInstances.put(instanceName, interpreter);
-					logger.info("A new instance of '" + context.getInterpreterName() + "' interpreter was created");
-					return interpreter;
-				} catch (Exception e) {
-					e.printStackTrace();
+			InterpreterInstance instance = interpreterInstances.get(instanceName);
+			if (instance != null && instance.descriptor == descriptor) {
+				return instance.interpreter;
+			}
+
+			// concurrent requests may ask for the same missing or outdated instance, only one is created
+			InterpreterInstance[] replaced = new InterpreterInstance[1];
+			instance = interpreterInstances.compute(instanceName, (name, current) -> {
+				if (current != null && current.descriptor.hasSameConfiguration(descriptor)) {
+					// descriptor resolved again with the same configuration, the instance is kept
+					return current.descriptor == descriptor ? current
+							: new InterpreterInstance(descriptor, current.interpreter);
 				}
+				replaced[0] = current;
+				Interpreter interpreter = createInterpreter(descriptor, context);
+				return interpreter != null ? new InterpreterInstance(descriptor, interpreter) : null;
+			});
+			if (replaced[0] != null) {
+				shutdown(replaced[0], "its context changed");
 			}
+			return instance != null ? instance.interpreter : null;
 		}
 		return null;
 	}
 
+	/**
+	 * shuts down a replaced interpreter instance, executions still running on it
+	 * fail
+	 *
+	 * @param instance replaced instance
+	 * @param reason   replacement reason, logged
+	 */
+	private void shutdown(InterpreterInstance instance, String reason) {
+		logger.info("Shutting down '" + instance.descriptor.getInterpreterName() + "' interpreter instance as "
+				+ reason);
+		instance.interpreter.shutdown();
+	}
+
+	/**
+	 * creates a new interpreter instance using its constructor with interpreter
+	 * context as parameter
+	 * 
+	 * @param descriptor interpreter descriptor
+	 * @param context    interpreter context
+	 * @return interpreter instance, null if it could not be created
+	 */
+	private Interpreter createInterpreter(InterpreterDescriptor descriptor, InterpreterContext context) {
+		logger.warn("No instance of '" + context.getInterpreterName() + "' interpreter was found, creating one ...");
+		try {
+			Interpreter interpreter = descriptor.getConstructor().newInstance(context);
+			logger.info("A new instance of '" + context.getInterpreterName() + "' interpreter was created");
+			return interpreter;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * shuts down all created interpreter instances
+	 */
+	@PreDestroy
+	public void shutdownInterpreters() {
+		for (InterpreterInstance instance : interpreterInstances.values()) {
+			logger.info("Shutting down interpreter : " + instance.interpreter.getClass().getSimpleName());
+			instance.interpreter.shutdown();
+		}
+	}
+
 	@Override
 	public Properties readPropertiesForInterpreter(String interpreterName) {
-		String prefix = "interpreter." + interpreterName;
-		logger.info("Reading all properties that starts with '" + prefix + "'");
-		
 		Properties props = new Properties();
+		Properties interpreterProps = interpreterProperties.get(interpreterName);
+		if (interpreterProps != null) {
+			props.putAll(interpreterProps);
+		}
+		return props;
+	}
+
+	/**
+	 * reads all properties starting with "interpreter." from the environment and
+	 * groups them by interpreter name
+	 * 
+	 * @return properties by interpreter name
+	 */
+	private Map<String, Properties> readInterpretersProperties() {
+		Map<String, Properties> properties = new HashMap<>();
 		MutablePropertySources propSrcs = ((AbstractEnvironment) env).getPropertySources();
 		StreamSupport.stream(propSrcs.spliterator(), false).filter(ps -> ps instanceof EnumerablePropertySource)
 				.map(ps -> ((EnumerablePropertySource<?>) ps).getPropertyNames()).flatMap(Arrays::stream)
-				.filter(propName -> propName.startsWith(prefix))
-				.forEach(propName -> props.setProperty(propName, env.getProperty(propName)));
-
-		return props;
+				.filter(propName -> propName.startsWith(PROPERTIES_PREFIX)).forEach(propName -> {
+					int nameEnd = propName.indexOf('.', PROPERTIES_PREFIX.length());
+					if (nameEnd > 0) {
+						properties.computeIfAbsent(propName.substring(PROPERTIES_PREFIX.length(), nameEnd),
+								name -> new Properties()).setProperty(propName, env.getProperty(propName));
+					}
+				});
+		return properties;
 	}
 
+	/**
+	 * Interpreter instance and the descriptor it was created from
+	 */
+	private static class InterpreterInstance {
+		private final InterpreterDescriptor descriptor;
+		private final Interpreter interpreter;
+
+		private InterpreterInstance(InterpreterDescriptor descriptor, Interpreter interpreter) {
+			this.descriptor = descriptor;
+			this.interpreter = interpreter;
+		}
+	}
 }
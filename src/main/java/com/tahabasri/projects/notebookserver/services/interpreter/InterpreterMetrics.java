@@ -0,0 +1,50 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+/**
+ * Receives measures taken inside an interpreter while it executes requests :
+ * process start time, watchdog kills and captured output size. An instance is
+ * bound to one interpreter
+ *
+ * @author Taha BASRI
+ *
+ */
+public interface InterpreterMetrics {
+
+	/**
+	 * Ignores all measures, used when no metrics are collected
+	 */
+	InterpreterMetrics NONE = new InterpreterMetrics() {
+
+		@Override
+		public void processStarted(long durationNanos) {
+		}
+
+		@Override
+		public void watchdogKilled() {
+		}
+
+		@Override
+		public void outputCaptured(String resultType, long bytes) {
+		}
+	};
+
+	/**
+	 * called each time an interpreter process is launched
+	 *
+	 * @param durationNanos time taken to launch the process, in nanoseconds
+	 */
+	void processStarted(long durationNanos);
+
+	/**
+	 * called each time an execution is killed because it reached its timeout
+	 */
+	void watchdogKilled();
+
+	/**
+	 * called once per execution with the whole output size, before truncation
+	 *
+	 * @param resultType execution result type
+	 * @param bytes      output size in bytes
+	 */
+	void outputCaptured(String resultType, long bytes);
+}
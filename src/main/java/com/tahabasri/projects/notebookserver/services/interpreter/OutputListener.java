@@ -0,0 +1,30 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+/**
+ * Receives execution output while it is produced, used to stream output to the
+ * user instead of waiting for the end of the execution. Chunks are bounded in
+ * size and delivered in order, from the thread executing the request
+ *
+ * @author Taha BASRI
+ *
+ */
+@FunctionalInterface
+public interface OutputListener {
+
+	/**
+	 * Standard output stream name
+	 */
+	String STDOUT = "stdout";
+	/**
+	 * Standard error stream name
+	 */
+	String STDERR = "stderr";
+
+	/**
+	 * called for each output chunk
+	 *
+	 * @param stream output stream name, {@link #STDOUT} or {@link #STDERR}
+	 * @param chunk  output text
+	 */
+	void onOutput(String stream, String chunk);
+}
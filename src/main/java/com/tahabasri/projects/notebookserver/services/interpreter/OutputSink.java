@@ -0,0 +1,214 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded execution output capture : output is kept in memory up to a limit,
+ * then the whole output is spilled to a temporary file. When the output is read
+ * back, only its first "head size" and last "tail size" bytes are returned, so
+ * the heap used by one execution stays bounded whatever the output size.
+ *
+ * The temporary file is deleted when the sink is closed
+ *
+ * @author Taha BASRI
+ *
+ */
+class OutputSink extends OutputStream {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	private final int memoryLimit;
+	private final int headSize;
+	private final int tailSize;
+
+	private byte[] memory;
+	private int memoryCount;
+	/**
+	 * Spill file channel, null while output fits in memory
+	 */
+	private FileChannel spill;
+	/**
+	 * Total output size in bytes
+	 */
+	private long size;
+
+	private final byte[] singleByte = new byte[1];
+
+	/**
+	 * @param memoryLimit maximum bytes kept in memory before spilling to disk
+	 * @param headSize    maximum bytes returned from output start
+	 * @param tailSize    maximum bytes returned from output end
+	 */
+	OutputSink(int memoryLimit, int headSize, int tailSize) {
+		this.memoryLimit = Math.max(0, memoryLimit);
+		this.headSize = Math.max(0, headSize);
+		this.tailSize = Math.max(0, tailSize);
+		this.memory = new byte[Math.min(INITIAL_BUFFER_SIZE, this.memoryLimit)];
+	}
+
+	/**
+	 * @param context execution context holding interpreter output limits
+	 */
+	OutputSink(ExecutionContext context) {
+		this(context.getOutputMemoryLimit(), context.getOutputHeadSize(), context.getOutputTailSize());
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		singleByte[0] = (byte) b;
+		write(singleByte, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+		if (spill == null && memoryCount + length <= memoryLimit) {
+			if (memoryCount + length > memory.length) {
+				memory = Arrays.copyOf(memory,
+						(int) Math.min(memoryLimit, Math.max(memoryCount + length, 2L * memory.length)));
+			}
+			System.arraycopy(bytes, offset, memory, memoryCount, length);
+			memoryCount += length;
+		} else {
+			if (spill == null) {
+				spillToDisk();
+			}
+			writeFully(ByteBuffer.wrap(bytes, offset, length));
+		}
+		size += length;
+	}
+
+	/**
+	 * @return total output size in bytes
+	 */
+	synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @param length count of bytes to write
+	 * @return true if the bytes can be written without spilling to disk
+	 */
+	synchronized boolean fitsInMemory(int length) {
+		return spill == null && memoryCount + length <= memoryLimit;
+	}
+
+	/**
+	 * @return true if output did not fit in memory and was written to disk
+	 */
+	synchronized boolean isSpilled() {
+		return spill != null;
+	}
+
+	/**
+	 * reads back the output, trimmed. Output larger than head size plus tail size
+	 * is truncated : its middle is replaced by a marker giving the count of
+	 * dropped bytes
+	 *
+	 * @return output content
+	 */
+	synchronized String getContent() {
+		try {
+			if (size <= (long) headSize + tailSize) {
+				int length = (int) size;
+				byte[] bytes = read(0, length);
+				int start = trimStart(bytes, 0, length);
+				return decode(bytes, start, trimEnd(bytes, start, length));
+			}
+
+			byte[] head = read(0, headSize);
+			byte[] tail = read(size - tailSize, tailSize);
+			StringBuilder content = new StringBuilder(headSize + tailSize + 64);
+			content.append(decode(head, trimStart(head, 0, headSize), headSize));
+			content.append("\n... [").append(size - headSize - tailSize).append(" bytes truncated] ...\n");
+			content.append(decode(tail, 0, trimEnd(tail, 0, tailSize)));
+			return content.toString();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading spilled output", e);
+		}
+	}
+
+	/**
+	 * releases the output and deletes the spill file, if any
+	 */
+	@Override
+	public synchronized void close() {
+		memory = new byte[0];
+		memoryCount = 0;
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				logger.warn("Error deleting spilled output : " + e.getMessage());
+			}
+		}
+	}
+
+	private void spillToDisk() throws IOException {
+		Path file = Files.createTempFile("notebook-output", ".tmp");
+		logger.debug("Output exceeds " + memoryLimit + " bytes, spilling it to " + file);
+		spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		writeFully(ByteBuffer.wrap(memory, 0, memoryCount));
+		memory = new byte[0];
+		memoryCount = 0;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			spill.write(buffer);
+		}
+	}
+
+	/**
+	 * reads output bytes, from memory or from spill file. The memory buffer itself
+	 * is returned when it is fully read, it may be longer than the output
+	 */
+	private byte[] read(long position, int length) throws IOException {
+		if (spill == null) {
+			return position == 0 && length == memoryCount ? memory
+					: Arrays.copyOfRange(memory, (int) position, (int) position + length);
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (spill.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * same characters as {@link String#trim()}, which are all single bytes in UTF-8
+	 */
+	private static int trimStart(byte[] bytes, int start, int end) {
+		while (start < end && (bytes[start] & 0xFF) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimEnd(byte[] bytes, int start, int end) {
+		while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private static String decode(byte[] bytes, int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+	}
+}
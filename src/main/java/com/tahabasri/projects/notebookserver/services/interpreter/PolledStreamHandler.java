@@ -0,0 +1,337 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process stream handler collecting output without pump threads : the output
+ * and error streams of all running processes are read by one shared poller
+ * thread, where the commons-exec handler starts two pump threads for each
+ * execution. Process pipes can not be registered to a NIO selector, the poller
+ * only reads bytes already available so it never blocks on a single process.
+ *
+ * Output fitting in memory is written by the poller itself. Once the output of
+ * an execution spills to disk, its chunks are copied and written by a shared
+ * spill thread, so a slow disk does not hold back the output of other
+ * processes. At most {@link #MAX_PENDING_SPILL} bytes of an execution wait for
+ * the spill thread, its process then waits on its full pipe.
+ *
+ * The program is written to the process standard input by the executing thread
+ * when the process starts, then the input is closed. Python reads the whole
+ * program before running it, so writing it never waits for output to be read
+ *
+ * @author Taha BASRI
+ *
+ */
+class PolledStreamHandler implements ExecuteStreamHandler {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	private static final Poller poller = new Poller();
+
+	/**
+	 * Writes spilled output, in the order chunks were read
+	 */
+	private static final ExecutorService spillWriter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "interpreter-output-spill");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final int PROGRAM_BUFFER_SIZE = 8192;
+
+	/**
+	 * Maximum bytes of one execution waiting for the spill thread
+	 */
+	private static final int MAX_PENDING_SPILL = 1024 * 1024;
+
+	private final OutputSink output;
+	private final InputStream program;
+
+	/**
+	 * set once output does not fit in memory anymore, output is then written by the
+	 * spill thread. Poller thread only
+	 */
+	private boolean spilling;
+	/**
+	 * bytes read but not yet written by the spill thread
+	 */
+	private final AtomicInteger pendingSpill = new AtomicInteger();
+
+	private OutputStream processInput;
+	private PolledStream processOutput;
+	private PolledStream processError;
+
+	/**
+	 * @param output  receives both process output and error, written by the poller
+	 *                thread, or by the spill thread once it spills to disk
+	 * @param program code sent to the process standard input
+	 */
+	PolledStreamHandler(OutputSink output, InputStream program) {
+		this.output = output;
+		this.program = program;
+	}
+
+	@Override
+	public void setProcessInputStream(OutputStream os) {
+		this.processInput = os;
+	}
+
+	@Override
+	public void setProcessOutputStream(InputStream is) {
+		this.processOutput = new PolledStream(is);
+	}
+
+	@Override
+	public void setProcessErrorStream(InputStream is) {
+		this.processError = new PolledStream(is);
+	}
+
+	@Override
+	public void start() {
+		poller.register(processOutput);
+		poller.register(processError);
+		try {
+			byte[] buffer = new byte[PROGRAM_BUFFER_SIZE];
+			int read;
+			while ((read = program.read(buffer)) >= 0) {
+				processInput.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			// the process ended before reading its program, its exit value reports the error
+			logger.debug("Error sending program to interpreter process : " + e.getMessage());
+		} finally {
+			try {
+				processInput.close();
+			} catch (IOException e) {
+				logger.debug("Error closing interpreter process input : " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * called once the process has ended, waits for the poller to read the output
+	 * left in process pipes
+	 */
+	@Override
+	public void stop() {
+		processOutput.end();
+		processError.end();
+		poller.wakeUp();
+		processOutput.await();
+		processError.await();
+	}
+
+	/**
+	 * Process stream read by the poller thread
+	 */
+	private class PolledStream {
+		private final InputStream input;
+		/**
+		 * released once the whole stream is read and written
+		 */
+		private final CountDownLatch done = new CountDownLatch(1);
+		/**
+		 * set once the process has ended, output is then complete in the pipe
+		 */
+		private volatile boolean ended;
+		/**
+		 * set once the whole stream is read, poller thread only
+		 */
+		private boolean finished;
+		/**
+		 * set when output can not be written, the stream is still read to let the
+		 * process end
+		 */
+		private volatile boolean failed;
+
+		private PolledStream(InputStream input) {
+			this.input = input;
+		}
+
+		private void end() {
+			ended = true;
+		}
+
+		/**
+		 * reads bytes available without blocking, poller thread only
+		 *
+		 * @param buffer poller read buffer
+		 * @return true if bytes were read
+		 */
+		private boolean poll(byte[] buffer) {
+			// read before checking the pipe : output written before the process end is then seen
+			boolean complete = ended;
+			if (pendingSpill.get() >= MAX_PENDING_SPILL) {
+				// left in the pipe until the spill thread catches up
+				return false;
+			}
+			try {
+				int available = input.available();
+				if (available > 0) {
+					int read = input.read(buffer, 0, Math.min(available, buffer.length));
+					if (read < 0) {
+						finish();
+						return false;
+					}
+					write(buffer, read);
+					return true;
+				}
+			} catch (IOException e) {
+				// stream closed
+				finish();
+				return false;
+			}
+			if (complete) {
+				finish();
+			}
+			return false;
+		}
+
+		private void write(byte[] buffer, int length) {
+			if (failed) {
+				return;
+			}
+			if (!spilling && output.fitsInMemory(length)) {
+				writeOutput(buffer, length);
+				return;
+			}
+			// the poller buffer is reused, the spill thread gets its own copy
+			spilling = true;
+			byte[] chunk = Arrays.copyOf(buffer, length);
+			pendingSpill.addAndGet(length);
+			spillWriter.execute(() -> {
+				try {
+					writeOutput(chunk, length);
+				} finally {
+					pendingSpill.addAndGet(-length);
+				}
+			});
+		}
+
+		private void writeOutput(byte[] bytes, int length) {
+			if (failed) {
+				return;
+			}
+			try {
+				output.write(bytes, 0, length);
+			} catch (IOException e) {
+				failed = true;
+				logger.warn("Error collecting interpreter output, the rest is dropped : " + e.getMessage());
+			}
+		}
+
+		private boolean isFinished() {
+			return finished;
+		}
+
+		/**
+		 * once the stream is read, it is done when its chunks waiting for the spill
+		 * thread are written
+		 */
+		private void finish() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			if (spilling) {
+				spillWriter.execute(done::countDown);
+			} else {
+				done.countDown();
+			}
+		}
+
+		private void await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Shared thread reading all registered streams in turn, it waits longer and
+	 * longer while no output comes and sleeps when no process is running
+	 */
+	private static class Poller implements Runnable {
+		private static final int BUFFER_SIZE = 64 * 1024;
+		private static final long MIN_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+		private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+
+		private final Queue<PolledStream> registered = new ConcurrentLinkedQueue<>();
+		private final Thread thread;
+
+		/**
+		 * streams being read, poller thread only
+		 */
+		private final List<PolledStream> streams = new ArrayList<>();
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private Poller() {
+			thread = new Thread(this, "interpreter-output");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void register(PolledStream stream) {
+			registered.add(stream);
+			wakeUp();
+		}
+
+		private void wakeUp() {
+			LockSupport.unpark(thread);
+		}
+
+		@Override
+		public void run() {
+			long wait = MIN_WAIT;
+			while (true) {
+				PolledStream stream;
+				while ((stream = registered.poll()) != null) {
+					streams.add(stream);
+				}
+
+				boolean read = false;
+				for (Iterator<PolledStream> iterator = streams.iterator(); iterator.hasNext();) {
+					stream = iterator.next();
+					try {
+						read |= stream.poll(buffer);
+					} catch (RuntimeException e) {
+						logger.warn("Error reading interpreter output : " + e.getMessage());
+						stream.finish();
+					}
+					if (stream.isFinished()) {
+						iterator.remove();
+					}
+				}
+
+				if (read) {
+					wait = MIN_WAIT;
+				} else if (streams.isEmpty()) {
+					LockSupport.park(this);
+					wait = MIN_WAIT;
+				} else {
+					LockSupport.parkNanos(this, wait);
+					wait = Math.min(MAX_WAIT, wait * 2);
+				}
+			}
+		}
+	}
+}
@@ -1,13 +1,27 @@
 package com.tahabasri.projects.notebookserver.services.interpreter;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteStreamHandler;
 import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.StreamPumper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,66 +32,318 @@ import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 public class PythonInterpreter extends Interpreter {
 	private static final Logger logger = LogManager.getLogger(Interpreter.class);
 
+	/**
+	 * Execution mode launching a new python process for each request
+	 */
+	public static final String MODE_PROCESS = "process";
+	/**
+	 * Execution mode sending requests to resident python workers
+	 */
+	public static final String MODE_WORKER = "worker";
+
+	/**
+	 * Creates stream pumps of executions running on virtual threads, null if the
+	 * JVM does not support virtual threads
+	 */
+	private static final ThreadFactory VIRTUAL_PUMPS = VirtualThreads.factory("exec-pump-");
+
+	/**
+	 * Resident workers, created on first request in worker mode
+	 */
+	private volatile PythonWorkerPool workerPool;
+	/**
+	 * Set once the interpreter is shut down, no worker pool is created anymore
+	 */
+	private boolean shutdown;
+
 	public PythonInterpreter(InterpreterContext context) {
 		super(context);
 	}
 
 	@Override
-	public boolean interpret(InterpretationRequest interpretationRequest, InterpreterContext context,
+	public boolean interpret(InterpretationRequest interpretationRequest, ExecutionContext context,
 			ExecutionResult result) {
 		logger.info("Interpreting request by " + context.getInterpreterName() + " interpreter");
-		String code = getFullSessionCode(context, interpretationRequest);
-		return execute(code, context, result);
+		if (MODE_WORKER.equals(context.getProperty("mode"))) {
+			try (OutputSink output = new OutputSink(context)) {
+				boolean interpretation;
+				if (context.hasSession() && Boolean.parseBoolean(context.getProperty("worker.incremental"))) {
+					logger.debug("Executing request code only, against session state kept by worker");
+					interpretation = getWorkerPool(context).executeInSession(context.getSessionStateKey(),
+							context.getSessionCodeSupplier(), interpretationRequest.getCode(), getTimeout(context),
+							context.getOutputListener(), output, result);
+				} else {
+					List<String> cells = getSessionCells(context, interpretationRequest);
+					interpretation = getWorkerPool(context).execute(cells, getTimeout(context),
+							context.getOutputListener(), output, result);
+				}
+				context.getMetrics().outputCaptured(result.getResultType(), output.size());
+				return interpretation;
+			}
+		}
+		return execute(getCodeInput(context, interpretationRequest), context, result);
+	}
+
+	/**
+	 * batches run in worker mode only, a process mode batch would start one process
+	 * by cell anyway
+	 */
+	@Override
+	public boolean supportsBatch(ExecutionContext context) {
+		return MODE_WORKER.equals(context.getProperty("mode"));
+	}
+
+	@Override
+	public List<ExecutionResult> interpretBatch(List<String> cells, ExecutionContext context, boolean stopOnError) {
+		logger.info("Interpreting a batch of " + cells.size() + " cells by " + context.getInterpreterName()
+				+ " interpreter");
+		List<ExecutionResult> results = new ArrayList<>(cells.size());
+		if (context.hasSession() && Boolean.parseBoolean(context.getProperty("worker.incremental"))) {
+			getWorkerPool(context).executeBatchInSession(context.getSessionStateKey(),
+					context.getSessionCodeSupplier(), cells, stopOnError, getTimeout(context), () -> new OutputSink(context), results);
+		} else {
+			List<String> preamble = context.hasSession() ? context.getSessionCode() : new ArrayList<>();
+			getWorkerPool(context).executeBatch(preamble, cells, stopOnError, getTimeout(context),
+					() -> new OutputSink(context), results);
+		}
+		return results;
+	}
+
+	/**
+	 * drops the session namespace from its worker and deletes its checkpoints,
+	 * checkpoints left by a previous run are deleted even if no worker was started
+	 */
+	@Override
+	public void releaseSession(InterpreterDescriptor descriptor, String sessionKey) {
+		PythonWorkerPool pool = workerPool;
+		if (pool != null) {
+			pool.releaseSession(sessionKey, descriptor.getTimeout());
+		} else {
+			SessionCheckpoints checkpoints = getCheckpoints(descriptor);
+			if (checkpoints != null) {
+				checkpoints.delete(sessionKey);
+			}
+		}
+	}
+
+	/**
+	 * deletes checkpoints of sessions which do not exist anymore, a new session
+	 * never reuses them as its state key differs
+	 */
+	@Override
+	public void retainSessions(InterpreterDescriptor descriptor, Set<String> sessionKeys) {
+		SessionCheckpoints checkpoints = getCheckpoints(descriptor);
+		if (checkpoints != null) {
+			checkpoints.retain(sessionKeys);
+		}
+	}
+
+	/**
+	 * creates the worker pool in worker mode, its minimum workers are then
+	 * pre-forked
+	 */
+	@Override
+	public void warmUp(ExecutionContext context) {
+		if (MODE_WORKER.equals(context.getProperty("mode"))) {
+			getWorkerPool(context);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			if (workerPool != null) {
+				logger.info("Stopping python workers");
+				workerPool.close();
+				workerPool = null;
+			}
+		}
+	}
+
+	/**
+	 * gets the worker pool, creates it on first call from properties :
+	 * <ul>
+	 * <li>"worker.size" : maximum workers count (available processors count if none
+	 * was set)</li>
+	 * <li>"worker.min-size" : workers pre-forked when the pool is created (none by
+	 * default)</li>
+	 * <li>"preload" : comma separated modules imported by each worker on
+	 * startup</li>
+	 * <li>"worker.max-executions" : requests executed by a worker before it is
+	 * replaced (never by default)</li>
+	 * <li>"worker.health-check.interval" : idle time in milliseconds after which a
+	 * worker is checked before being reused (60000 by default)</li>
+	 * </ul>
+	 * Sessions checkpoints are enabled when "checkpoint.interval" is set to a
+	 * positive cells count
+	 *
+	 * @param context execution context
+	 * @return interpreter worker pool
+	 */
+	private PythonWorkerPool getWorkerPool(ExecutionContext context) {
+		PythonWorkerPool pool = workerPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = workerPool;
+				if (pool == null) {
+					if (shutdown) {
+						// a request still holding a replaced interpreter, its pool would never be closed
+						throw new IllegalStateException(
+								"'" + context.getInterpreterName() + "' interpreter was shut down, retry the request");
+					}
+					PythonWorkerPool.Options options = getWorkerOptions(context);
+					logger.info("Creating python worker pool of size " + options.minSize + " to " + options.maxSize
+							+ (options.preload.isEmpty() ? "" : ", preloading " + options.preload));
+					SessionCheckpoints checkpoints = getCheckpoints(context.getDescriptor());
+					if (checkpoints != null) {
+						logger.info("Sessions are checkpointed every " + checkpoints.getInterval() + " cells in : "
+								+ checkpoints.getDirectory().getAbsolutePath());
+					}
+					pool = new PythonWorkerPool(context.getInterpreterPath(), options, context.getMetrics(),
+							checkpoints);
+					pool.warmUp();
+					workerPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	private PythonWorkerPool.Options getWorkerOptions(ExecutionContext context) {
+		String sizeValue = context.getProperty("worker.size");
+		PythonWorkerPool.Options options = new PythonWorkerPool.Options(
+				sizeValue != null ? Integer.parseInt(sizeValue.trim()) : Runtime.getRuntime().availableProcessors());
+		String minSizeValue = context.getProperty("worker.min-size");
+		options.minSize = minSizeValue != null ? Integer.parseInt(minSizeValue.trim()) : 0;
+		String preloadValue = context.getProperty("preload");
+		if (preloadValue != null && !preloadValue.trim().isEmpty()) {
+			options.preload = new ArrayList<>();
+			for (String module : preloadValue.split(",")) {
+				if (!module.trim().isEmpty()) {
+					options.preload.add(module.trim());
+				}
+			}
+		}
+		String maxExecutionsValue = context.getProperty("worker.max-executions");
+		options.maxExecutions = maxExecutionsValue != null ? Integer.parseInt(maxExecutionsValue.trim()) : 0;
+		String healthCheckValue = context.getProperty("worker.health-check.interval");
+		options.healthCheckInterval = healthCheckValue != null ? Long.parseLong(healthCheckValue.trim()) : 60000;
+		// preloading heavy modules may take longer than executing a request
+		options.startTimeout = Math.max(getTimeout(context), 30000);
+		return options;
 	}
 
 	/**
-	 * gets all code that resides in session, this helps with saving variables and
-	 * sessions states
+	 * creates sessions checkpoints from "checkpoint.interval" and "checkpoint.dir"
+	 * properties, checkpoints are stored under the user home directory if no
+	 * directory was set. Checkpoints are disabled when their directory can not be
+	 * made private to the server user
+	 *
+	 * @param descriptor interpreter descriptor
+	 * @return sessions checkpoints, null if checkpoints are disabled
+	 */
+	private SessionCheckpoints getCheckpoints(InterpreterDescriptor descriptor) {
+		String intervalValue = descriptor.getProperty("checkpoint.interval");
+		int interval = intervalValue != null ? Integer.parseInt(intervalValue.trim()) : 0;
+		if (interval <= 0) {
+			return null;
+		}
+		String directoryValue = descriptor.getProperty("checkpoint.dir");
+		File directory = directoryValue != null ? new File(directoryValue)
+				: new File(System.getProperty("user.home"),
+						".notebook-server/checkpoints/" + descriptor.getInterpreterName());
+		SessionCheckpoints checkpoints = new SessionCheckpoints(directory, interval);
+		return checkpoints.prepareDirectory() ? checkpoints : null;
+	}
+
+	/**
+	 * gets session code lines followed by request code as separate cells, workers
+	 * run them one after the other so no separator nor quotes escaping is needed
+	 *
+	 * @param context               execution context
+	 * @param interpretationRequest user parsed request
+	 * @return code cells to execute
+	 */
+	private List<String> getSessionCells(ExecutionContext context, InterpretationRequest interpretationRequest) {
+		List<String> cells = new ArrayList<>();
+		if (context.hasSession()) {
+			cells.addAll(context.getSessionCode());
+		}
+		cells.add(interpretationRequest.getCode());
+		return cells;
+	}
+
+	/**
+	 * gets interpreter timeout, resolved once from properties file (or default
+	 * value if none was set)
+	 *
+	 * @param context execution context
+	 * @return timeout in milliseconds
+	 */
+	private int getTimeout(ExecutionContext context) {
+		int timeout = context.getTimeout();
+		logger.debug("Timeout for the interpreter is : " + timeout);
+		return timeout;
+	}
+
+	/**
+	 * gets session code lines followed by request code as the program python reads
+	 * from its standard input : cells are separated by new lines and sent as they
+	 * are written, without quotes escaping nor size limit. Each cell is encoded
+	 * only when the process reads it, the whole program is never copied at once
 	 * 
-	 * @param context               interpreter context
+	 * @param context               execution context
 	 * @param interpretationRequest user parsed request
-	 * @return full code concatenated by interpreter separator (or default if none
-	 *         was given), request request code if no session is needed
-	 */
-	private String getFullSessionCode(InterpreterContext context, InterpretationRequest interpretationRequest) {
-		logger.debug("Reading interpreter separator");
-		
-		String separator = getProperty("separator");
-		separator = separator != null ? separator : Interpreter.DEFAULT_SEPARATOR;
-
-		if (getSession() != null) {
-			logger.debug("Reading all session code lines");
-			StringBuilder codeBuilder = new StringBuilder();
-			for (String code : getSession().getCodeLines()) {
-				codeBuilder.append(code.replaceAll("\"", "'"));
-				codeBuilder.append(separator);
-			}
-			codeBuilder.append(interpretationRequest.getCode().replaceAll("\"", "'"));
-			return codeBuilder.toString();
+	 * @return program to send to the python process
+	 */
+	private InputStream getCodeInput(ExecutionContext context, InterpretationRequest interpretationRequest) {
+		if (!context.hasSession()) {
+			logger.warn("No session for the request, executing request code solo!");
 		}
-		
-		logger.warn("No session for the request, executing request code solo!");
-		return interpretationRequest.getCode();
+		Iterator<String> cells = getSessionCells(context, interpretationRequest).iterator();
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			@Override
+			public boolean hasMoreElements() {
+				return cells.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				return new ByteArrayInputStream((cells.next() + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		});
 	}
 
 	/**
 	 * initialize interpreter executor, sets it timeout from properties file (or
-	 * default value if none was set
+	 * default value if none was set. Collected output is read by the shared
+	 * output poller. When streaming, output is forwarded to the output listener by
+	 * pump threads instead, a slow listener then only delays its own execution.
+	 * The program is sent to the process standard input, which is closed once the
+	 * program is sent. Pumps run on virtual threads when the execution itself runs
+	 * on a virtual thread
 	 * 
 	 * @param executor executor implementation
 	 * @param output   interpreter configured output
+	 * @param program  code sent to the process standard input
+	 * @param context  execution context
 	 */
-	private void initializeExecutor(DefaultExecutor executor, ByteArrayOutputStream output) {
+	private void initializeExecutor(DefaultExecutor executor, OutputSink output, InputStream program,
+			ExecutionContext context) {
 		logger.debug("Initializing interpreter executor");
-		PumpStreamHandler psh = new PumpStreamHandler(output);
+		ExecuteStreamHandler psh;
+		if (context.isStreaming()) {
+			ThreadFactory pumps = VirtualThreads.isVirtual(Thread.currentThread()) ? VIRTUAL_PUMPS : null;
+			psh = new ThreadFactoryPumpStreamHandler(
+					new StreamingOutputStream(context.getOutputListener(), OutputListener.STDOUT),
+					new StreamingOutputStream(context.getOutputListener(), OutputListener.STDERR), program, pumps);
+		} else {
+			psh = new PolledStreamHandler(output, program);
+		}
 
 		// read property from external properties file
-		String timeoutValue = getProperty("timeout");
-		int timeout = timeoutValue != null ? Integer.valueOf(timeoutValue) : Interpreter.DEFAULT_TIMEOUT;
-
-		logger.info("Timeout for the interpreter is : " + timeoutValue);
-		
-		ExecuteWatchdog watchDog = new ExecuteWatchdog(timeout);
+		ExecuteWatchdog watchDog = new ScheduledWatchdog(getTimeout(context));
 
 		executor.setStreamHandler(psh);
 		executor.setWatchdog(watchDog);
@@ -86,29 +352,34 @@ public class PythonInterpreter extends Interpreter {
 	/**
 	 * execute the interpretation request
 	 * 
-	 * @param code    user code (session if defined)
-	 * @param context interpreter context
+	 * @param program user code (session if defined), read by python from its
+	 *                standard input
+	 * @param context execution context
 	 * @param result  interpretation result
 	 * @return true if interpretation was good, false otherwise
 	 */
-	public boolean execute(String code, InterpreterContext context, ExecutionResult result) {
-		DefaultExecutor executor = new DefaultExecutor();
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
+	public boolean execute(InputStream program, ExecutionContext context, ExecutionResult result) {
+		DefaultExecutor executor = new MeasuredExecutor(context.getMetrics());
+		// output is bounded : kept in memory up to a limit, then spilled to disk
+		OutputSink output = new OutputSink(context);
 
-		initializeExecutor(executor, output);
+		initializeExecutor(executor, output, program, context);
 
 		String executorPath = context.getInterpreterPath();
 		CommandLine cl = new CommandLine(executorPath);
-		cl.addArguments("-c");
-		cl.addArguments("\"" + code + "\"", true);
+		// '-' : the program is read from standard input, it is not limited by the command line size
+		cl.addArgument("-");
 		try {
 			logger.info("Executing interpretation...");
 			executor.execute(cl);
 			result.setResultType(ExecutionResult.RESULT_OK);
-			result.setResultContent(output.toString().trim());
+			result.setResultContent(output.getContent());
 			logger.info("Interpretation was executed successfully");
 			return true;
 		} catch (ExecuteException e) {
+			if (executor.getWatchdog().killedProcess()) {
+				context.getMetrics().watchdogKilled();
+			}
 			result.setResultContent("Error executing command, due to syntax or execution time : " + e.getMessage());
 			result.setResultType(ExecutionResult.RESULT_ERROR);
 			logger.debug("Error interpreting the request : " + e);
@@ -116,7 +387,51 @@ public class PythonInterpreter extends Interpreter {
 			result.setResultContent("Error executing command, : " + e.getMessage());
 			result.setResultType(ExecutionResult.RESULT_ERROR);
 			logger.debug("Error interpreting the request : " + e);
+		} finally {
+			context.getMetrics().outputCaptured(result.getResultType(), output.size());
+			output.close();
 		}
 		return false;
 	}
+
+	/**
+	 * Stream handler creating its pump threads with the given factory, or as
+	 * platform threads when none is given
+	 */
+	private static class ThreadFactoryPumpStreamHandler extends PumpStreamHandler {
+		private final ThreadFactory pumps;
+
+		private ThreadFactoryPumpStreamHandler(OutputStream out, OutputStream err, InputStream input,
+				ThreadFactory pumps) {
+			super(out, err, input);
+			this.pumps = pumps;
+		}
+
+		@Override
+		protected Thread createPump(InputStream is, OutputStream os, boolean closeWhenExhausted) {
+			if (pumps == null) {
+				return super.createPump(is, os, closeWhenExhausted);
+			}
+			return pumps.newThread(new StreamPumper(is, os, closeWhenExhausted));
+		}
+	}
+
+	/**
+	 * Executor measuring the time taken to launch the interpreter process
+	 */
+	private static class MeasuredExecutor extends DefaultExecutor {
+		private final InterpreterMetrics metrics;
+
+		private MeasuredExecutor(InterpreterMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		@Override
+		protected Process launch(CommandLine command, Map<String, String> env, File dir) throws IOException {
+			long start = System.nanoTime();
+			Process process = super.launch(command, env, dir);
+			metrics.processStarted(System.nanoTime() - start);
+			return process;
+		}
+	}
 }
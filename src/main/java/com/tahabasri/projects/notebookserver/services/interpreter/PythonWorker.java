@@ -0,0 +1,559 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+
+/**
+ * Resident python process, reads code cells from its standard input and sends
+ * back their output using the framed protocol defined by the worker script
+ * (interpreter/python_worker.py). A worker executes one request at a time and
+ * keeps session namespaces alive between requests
+ *
+ * @author Taha BASRI
+ *
+ */
+class PythonWorker {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	/**
+	 * Worker script, bundled with the application resources
+	 */
+	private static final String WORKER_SCRIPT = "/interpreter/python_worker.py";
+
+	private static final byte OPERATION_EXECUTE = 'X';
+	private static final byte OPERATION_STREAM = 'S';
+	private static final byte OPERATION_CHECKPOINT = 'P';
+	private static final byte OPERATION_RESTORE = 'R';
+	private static final byte OPERATION_DROP = 'D';
+	private static final byte OPERATION_BATCH = 'B';
+	private static final byte OPERATION_HEALTH_CHECK = 'H';
+	private static final byte STATUS_OK = 'O';
+	private static final byte STATUS_CHUNK = 'C';
+	private static final byte STREAM_STDOUT = 'o';
+
+	/**
+	 * Worker script extracted to file system, python can not read it from inside
+	 * the application archive
+	 */
+	private static File workerScript;
+
+	private final InterpreterMetrics metrics;
+	private final Process process;
+	private final DataOutputStream requests;
+	private final DataInputStream responses;
+
+	/**
+	 * Raised when the protocol stream is broken, the worker must not be reused
+	 */
+	private volatile boolean broken;
+
+	/**
+	 * Session namespaces living inside the worker process
+	 */
+	private final Set<String> namespaces = new HashSet<>();
+
+	/**
+	 * Buffer used to copy output frames to output sinks
+	 */
+	private final byte[] transferBuffer = new byte[8192];
+
+	/**
+	 * Requests executed by the worker (single requests and batches)
+	 */
+	private volatile int executions;
+	/**
+	 * Time of the last operation sent to the worker, as given by
+	 * {@link System#nanoTime()}
+	 */
+	private volatile long lastUsed = System.nanoTime();
+
+	/**
+	 * launches a new python worker process
+	 *
+	 * @param executorPath python executable path
+	 * @param preload      modules imported by the worker on startup, may be empty
+	 * @param metrics      receives worker start time, watchdog kills and batch
+	 *                     cells output size
+	 * @throws IOException when the process can not be started
+	 */
+	PythonWorker(String executorPath, List<String> preload, InterpreterMetrics metrics) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(executorPath);
+		command.add("-u");
+		command.add(getWorkerScript().getAbsolutePath());
+		command.addAll(preload);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		// user code writing to the real stderr ends up in the server output
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		logger.info("Starting a new python worker using : " + executorPath
+				+ (preload.isEmpty() ? "" : ", preloading " + preload));
+		this.metrics = metrics;
+		long start = System.nanoTime();
+		this.process = builder.start();
+		metrics.processStarted(System.nanoTime() - start);
+		this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+
+	/**
+	 * extracts the worker script from application resources once
+	 *
+	 * @return worker script file
+	 * @throws IOException when the script can not be extracted
+	 */
+	private static synchronized File getWorkerScript() throws IOException {
+		if (workerScript == null) {
+			File script = File.createTempFile("python_worker", ".py");
+			script.deleteOnExit();
+			try (InputStream source = PythonWorker.class.getResourceAsStream(WORKER_SCRIPT)) {
+				if (source == null) {
+					throw new IOException("Worker script not found : " + WORKER_SCRIPT);
+				}
+				Files.copy(source, script.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			workerScript = script;
+		}
+		return workerScript;
+	}
+
+	/**
+	 * executes code cells in order, stops at first failing cell
+	 *
+	 * @param namespace session namespace where the cells are executed, a fresh
+	 *                  namespace is used when null and dropped after execution
+	 * @param cells          code cells
+	 * @param timeout        maximum execution time in milliseconds, the worker is
+	 *                       killed when it is reached
+	 * @param outputListener receives output chunks while cells are executed, null
+	 *                       to get the output in the result
+	 * @param output         bounded capture of the output returned in the result
+	 * @param result         interpretation result
+	 * @return true if interpretation was good, false otherwise
+	 */
+	synchronized boolean execute(String namespace, List<String> cells, long timeout, OutputListener outputListener,
+			OutputSink output, ExecutionResult result) {
+		executions++;
+		ExecuteWatchdog watchDog = new ScheduledWatchdog(timeout);
+		watchDog.start(process);
+		try {
+			requests.writeByte(outputListener != null ? OPERATION_STREAM : OPERATION_EXECUTE);
+			writeString(namespace != null ? namespace : "");
+			requests.writeInt(cells.size());
+			for (String cell : cells) {
+				writeString(cell);
+			}
+			requests.flush();
+
+			byte status = responses.readByte();
+			while (status == STATUS_CHUNK && outputListener != null) {
+				String stream = responses.readByte() == STREAM_STDOUT ? OutputListener.STDOUT : OutputListener.STDERR;
+				String chunk = readString();
+				try {
+					outputListener.onOutput(stream, chunk);
+				} catch (RuntimeException e) {
+					// remaining chunks must still be read to keep the protocol stream in sync
+					logger.warn("Output listener failed, dropping the rest of the output : " + e.getMessage());
+					outputListener = (ignoredStream, ignoredChunk) -> {
+					};
+				}
+				status = responses.readByte();
+			}
+			boolean success = status == STATUS_OK;
+			readInto(output);
+			if (namespace != null) {
+				namespaces.add(namespace);
+			}
+			setResult(success, output.getContent(), outputListener != null, result);
+			return success;
+		} catch (IOException e) {
+			setFailure(e, watchDog, timeout, result);
+			return false;
+		} finally {
+			watchDog.stop();
+			lastUsed = System.nanoTime();
+		}
+	}
+
+	/**
+	 * executes code cells in order, each cell gets its own result and its own
+	 * timeout. The preamble cells are executed first, their output is dropped and
+	 * they share the first cell timeout
+	 *
+	 * @param namespace   session namespace where the cells are executed, a fresh
+	 *                    namespace is used when null and dropped after execution
+	 * @param preamble    cells rebuilding the state the cells rely on (session
+	 *                    history), may be empty
+	 * @param cells       code cells
+	 * @param stopOnError true to skip the cells following a failed one
+	 * @param timeout     maximum execution time of one cell in milliseconds, the
+	 *                    worker is killed when it is reached
+	 * @param outputs     gives the bounded capture of each cell output
+	 * @param results     receives one result by executed cell, a failing worker
+	 *                    adds the result of the cell it was executing
+	 * @return true if all cells were interpreted successfully, false otherwise
+	 */
+	synchronized boolean executeBatch(String namespace, List<String> preamble, List<String> cells,
+			boolean stopOnError, long timeout, Supplier<OutputSink> outputs, List<ExecutionResult> results) {
+		executions++;
+		ExecuteWatchdog watchDog = new ScheduledWatchdog(timeout);
+		watchDog.start(process);
+		ExecutionResult result = null;
+		try {
+			requests.writeByte(OPERATION_BATCH);
+			writeString(namespace != null ? namespace : "");
+			requests.writeByte(stopOnError ? 1 : 0);
+			requests.writeInt(preamble.size());
+			for (String cell : preamble) {
+				writeString(cell);
+			}
+			requests.writeInt(cells.size());
+			for (String cell : cells) {
+				writeString(cell);
+			}
+			requests.flush();
+
+			boolean success = true;
+			for (int i = 0; i < cells.size(); i++) {
+				if (i > 0) {
+					watchDog.stop();
+					watchDog = new ScheduledWatchdog(timeout);
+					watchDog.start(process);
+				}
+				result = new ExecutionResult();
+				boolean cellSuccess = responses.readByte() == STATUS_OK;
+				try (OutputSink output = outputs.get()) {
+					readInto(output);
+					setResult(cellSuccess, output.getContent(), false, result);
+					metrics.outputCaptured(result.getResultType(), output.size());
+				}
+				results.add(result);
+				result = null;
+				if (!cellSuccess) {
+					success = false;
+					if (stopOnError) {
+						break;
+					}
+				}
+			}
+			if (namespace != null) {
+				namespaces.add(namespace);
+			}
+			return success;
+		} catch (IOException e) {
+			if (result == null) {
+				result = new ExecutionResult();
+			}
+			setFailure(e, watchDog, timeout, result);
+			results.add(result);
+			return false;
+		} finally {
+			watchDog.stop();
+			lastUsed = System.nanoTime();
+		}
+	}
+
+	/**
+	 * replays session history cells in the session namespace, each cell gets its
+	 * own timeout and the replay stops at the first failing cell. Output of
+	 * replayed cells is dropped. When a cell fails, the namespace is dropped as it
+	 * does not match the session history anymore
+	 *
+	 * @param namespace session namespace
+	 * @param cells     session history cells
+	 * @param timeout   maximum execution time of one cell in milliseconds, the
+	 *                  worker is killed when it is reached
+	 * @param output    bounded capture of the failing cell output
+	 * @param result    operation result, holds the error when it failed
+	 * @return true if all cells were replayed, false otherwise
+	 */
+	synchronized boolean replay(String namespace, List<String> cells, long timeout, OutputSink output,
+			ExecutionResult result) {
+		ExecuteWatchdog watchDog = new ScheduledWatchdog(timeout);
+		watchDog.start(process);
+		try {
+			requests.writeByte(OPERATION_BATCH);
+			writeString(namespace);
+			requests.writeByte(1);
+			requests.writeInt(0);
+			requests.writeInt(cells.size());
+			for (String cell : cells) {
+				writeString(cell);
+			}
+			requests.flush();
+
+			for (int i = 0; i < cells.size(); i++) {
+				if (i > 0) {
+					watchDog.stop();
+					watchDog = new ScheduledWatchdog(timeout);
+					watchDog.start(process);
+				}
+				if (responses.readByte() != STATUS_OK) {
+					readInto(output);
+					watchDog.stop();
+					result.setResultType(ExecutionResult.RESULT_ERROR);
+					result.setResultContent(
+							"error in cell " + (i + 1) + " of " + cells.size() + " : " + output.getContent());
+					namespaces.remove(namespace);
+					call(OPERATION_DROP, namespace, null, timeout, new ExecutionResult());
+					return false;
+				}
+				skipFrame();
+			}
+			namespaces.add(namespace);
+			result.setResultType(ExecutionResult.RESULT_OK);
+			result.setResultContent("");
+			return true;
+		} catch (IOException e) {
+			setCallFailure(e, watchDog, timeout, result);
+			return false;
+		} finally {
+			watchDog.stop();
+			lastUsed = System.nanoTime();
+		}
+	}
+
+	private void setResult(boolean success, String content, boolean streaming, ExecutionResult result) {
+		if (success) {
+			result.setResultType(ExecutionResult.RESULT_OK);
+			result.setResultContent(content);
+		} else {
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			// when streaming, the traceback was already sent as error output
+			String error = streaming && content.isEmpty() ? "see error output" : content;
+			result.setResultContent("Error executing command, due to syntax or execution time : " + error);
+		}
+	}
+
+	/**
+	 * fills the result of an execution which broke the protocol stream, the worker
+	 * is killed as it can not be reused
+	 */
+	private void setFailure(IOException e, ExecuteWatchdog watchDog, long timeout, ExecutionResult result) {
+		result.setResultType(ExecutionResult.RESULT_ERROR);
+		if (watchDog.killedProcess()) {
+			metrics.watchdogKilled();
+			result.setResultContent(
+					"Error executing command, due to syntax or execution time : timeout of " + timeout + "ms reached");
+		} else {
+			result.setResultContent("Error executing command, : " + e.getMessage());
+		}
+		logger.debug("Error interpreting the request : " + e);
+		destroy();
+	}
+
+	/**
+	 * saves the session namespace to a checkpoint file
+	 *
+	 * @param namespace session namespace, must live inside this worker
+	 * @param file      checkpoint file, replaced if it exists
+	 * @param timeout   maximum time in milliseconds
+	 * @param result    operation result, holds the error when it failed
+	 * @return true if the checkpoint was saved, false otherwise
+	 */
+	synchronized boolean checkpoint(String namespace, File file, long timeout, ExecutionResult result) {
+		return call(OPERATION_CHECKPOINT, namespace, file, timeout, result);
+	}
+
+	/**
+	 * restores a session namespace from a checkpoint file, replacing the namespace
+	 * held by the worker if any
+	 *
+	 * @param namespace session namespace
+	 * @param file      checkpoint file
+	 * @param timeout   maximum time in milliseconds
+	 * @param result    operation result, holds the error when it failed
+	 * @return true if the namespace was restored, false otherwise
+	 */
+	synchronized boolean restore(String namespace, File file, long timeout, ExecutionResult result) {
+		boolean restored = call(OPERATION_RESTORE, namespace, file, timeout, result);
+		if (restored) {
+			namespaces.add(namespace);
+		}
+		return restored;
+	}
+
+	/**
+	 * drops a session namespace, the worker releases its variables
+	 *
+	 * @param namespace session namespace
+	 * @param timeout   maximum time in milliseconds
+	 * @param result    operation result, holds the error when it failed
+	 * @return true if the namespace was dropped, false otherwise
+	 */
+	synchronized boolean drop(String namespace, long timeout, ExecutionResult result) {
+		namespaces.remove(namespace);
+		return call(OPERATION_DROP, namespace, null, timeout, result);
+	}
+
+	/**
+	 * checks the worker answers, waits for it to finish starting (modules
+	 * preloading) if it was just launched
+	 *
+	 * @param timeout maximum time in milliseconds, the worker is killed when it is
+	 *                reached
+	 * @param result  operation result, holds the error when it failed
+	 * @return true if the worker is healthy, false otherwise
+	 */
+	synchronized boolean ping(long timeout, ExecutionResult result) {
+		return call(OPERATION_HEALTH_CHECK, null, null, timeout, result);
+	}
+
+	/**
+	 * sends an operation and reads its status
+	 *
+	 * @param namespace session namespace, null if the operation takes none
+	 * @param file      operation file, null if the operation takes none
+	 */
+	private boolean call(byte operation, String namespace, File file, long timeout, ExecutionResult result) {
+		ExecuteWatchdog watchDog = new ScheduledWatchdog(timeout);
+		watchDog.start(process);
+		try {
+			requests.writeByte(operation);
+			if (namespace != null) {
+				writeString(namespace);
+			}
+			if (file != null) {
+				writeString(file.getAbsolutePath());
+			}
+			requests.flush();
+
+			boolean success = responses.readByte() == STATUS_OK;
+			result.setResultType(success ? ExecutionResult.RESULT_OK : ExecutionResult.RESULT_ERROR);
+			result.setResultContent(readString());
+			return success;
+		} catch (IOException e) {
+			setCallFailure(e, watchDog, timeout, result);
+			return false;
+		} finally {
+			watchDog.stop();
+			lastUsed = System.nanoTime();
+		}
+	}
+
+	/**
+	 * fills the result of a session operation which broke the protocol stream, the
+	 * worker is killed as it can not be reused
+	 */
+	private void setCallFailure(IOException e, ExecuteWatchdog watchDog, long timeout, ExecutionResult result) {
+		result.setResultType(ExecutionResult.RESULT_ERROR);
+		if (watchDog.killedProcess()) {
+			metrics.watchdogKilled();
+			result.setResultContent("timeout of " + timeout + "ms reached");
+		} else {
+			result.setResultContent(e.getMessage());
+		}
+		logger.debug("Error in worker session operation : " + e);
+		destroy();
+	}
+
+	/**
+	 * checks if the given session namespace lives inside this worker
+	 *
+	 * @param namespace session namespace
+	 * @return true if the session state is held by the worker, false otherwise
+	 */
+	synchronized boolean hasNamespace(String namespace) {
+		return namespaces.contains(namespace);
+	}
+
+	boolean isAlive() {
+		return !broken && process.isAlive();
+	}
+
+	/**
+	 * @return requests executed by the worker since it started
+	 */
+	int getExecutions() {
+		return executions;
+	}
+
+	/**
+	 * @return time in milliseconds since the worker was last used
+	 */
+	long getIdleTime() {
+		return (System.nanoTime() - lastUsed) / 1_000_000;
+	}
+
+	/**
+	 * kills the worker process, its python state is lost
+	 */
+	void destroy() {
+		broken = true;
+		process.destroyForcibly();
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		requests.writeInt(bytes.length);
+		requests.write(bytes);
+	}
+
+	/**
+	 * copies a string frame to the output sink by small chunks, the whole frame is
+	 * never held in memory
+	 */
+	private void readInto(OutputSink output) throws IOException {
+		int length = responses.readInt();
+		if (length < 0) {
+			throw new EOFException("Invalid frame length : " + length);
+		}
+		while (length > 0) {
+			int read = responses.read(transferBuffer, 0, Math.min(length, transferBuffer.length));
+			if (read < 0) {
+				throw new EOFException("Output frame ended unexpectedly");
+			}
+			output.write(transferBuffer, 0, read);
+			length -= read;
+		}
+	}
+
+	/**
+	 * reads a string frame and drops it
+	 */
+	private void skipFrame() throws IOException {
+		int length = responses.readInt();
+		if (length < 0) {
+			throw new EOFException("Invalid frame length : " + length);
+		}
+		while (length > 0) {
+			int skipped = responses.skipBytes(length);
+			if (skipped <= 0) {
+				// skipBytes gives up at end of stream without telling
+				responses.readByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	private String readString() throws IOException {
+		int length = responses.readInt();
+		if (length < 0) {
+			throw new EOFException("Invalid frame length : " + length);
+		}
+		byte[] bytes = new byte[length];
+		responses.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
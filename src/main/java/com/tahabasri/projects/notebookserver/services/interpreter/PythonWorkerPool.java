@@ -0,0 +1,571 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+
+/**
+ * Pool of resident python workers, bounded by its maximum size. The minimum
+ * count of workers is pre-forked in background when the pool is warmed up,
+ * other workers are started on demand. Free warm workers are claimed first, a
+ * worker is checked before being reused after a long idle time, and replaced
+ * when it dies (crash or timeout) or when it reached its executions count.
+ * Workers replacing warm ones are started in background, with their modules
+ * preloaded, so requests do not wait for a cold start.
+ *
+ * Each session is pinned to one worker slot so its python namespace can be kept
+ * alive inside the worker between requests
+ *
+ * @author Taha BASRI
+ *
+ */
+class PythonWorkerPool {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	/**
+	 * Output bytes kept when replaying a session history
+	 */
+	private static final int REPLAY_OUTPUT_SIZE = 2048;
+
+	private final String executorPath;
+	private final Options options;
+	private final WorkerSlot[] slots;
+	private final InterpreterMetrics metrics;
+	/**
+	 * Sessions state checkpoints, null when checkpoints are disabled
+	 */
+	private final SessionCheckpoints checkpoints;
+
+	/**
+	 * Slot assigned to each session, a session always runs on the same slot
+	 */
+	private final Map<String, WorkerSlot> sessionSlots = new ConcurrentHashMap<>();
+	/**
+	 * Round robin index used to assign slots
+	 */
+	private final AtomicInteger nextSlot = new AtomicInteger();
+	/**
+	 * Starts workers in background : pre-forked ones and replacements of recycled
+	 * ones
+	 */
+	private final ExecutorService starter;
+
+	private volatile boolean closed;
+
+	PythonWorkerPool(String executorPath, int size, InterpreterMetrics metrics) {
+		this(executorPath, size, metrics, null);
+	}
+
+	PythonWorkerPool(String executorPath, int size, InterpreterMetrics metrics, SessionCheckpoints checkpoints) {
+		this(executorPath, new Options(size), metrics, checkpoints);
+	}
+
+	/**
+	 * @param executorPath python executable path
+	 * @param options      workers count, preloaded modules and recycling
+	 * @param metrics      receives workers start time and watchdog kills
+	 * @param checkpoints  sessions state checkpoints, null to always replay
+	 *                     sessions history
+	 */
+	PythonWorkerPool(String executorPath, Options options, InterpreterMetrics metrics,
+			SessionCheckpoints checkpoints) {
+		this.executorPath = executorPath;
+		this.options = options;
+		this.metrics = metrics;
+		this.checkpoints = checkpoints;
+		this.slots = new WorkerSlot[Math.max(1, options.maxSize)];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new WorkerSlot();
+		}
+		this.starter = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "python-worker-starter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * starts the minimum count of workers in background, each one is ready (its
+	 * modules preloaded) before being claimed by a request
+	 */
+	void warmUp() {
+		int count = Math.min(options.minSize, slots.length);
+		if (count > 0) {
+			logger.info("Pre-forking " + count + " python workers");
+		}
+		for (int i = 0; i < count; i++) {
+			startInBackground(slots[i]);
+		}
+	}
+
+	/**
+	 * executes code cells in a fresh namespace on the first available worker,
+	 * waits for one if all workers are busy
+	 *
+	 * @param cells          code cells
+	 * @param timeout        maximum execution time in milliseconds
+	 * @param outputListener receives output while it is produced, null if not
+	 *                       streaming
+	 * @param output         bounded capture of the output returned in the result
+	 * @param result         interpretation result
+	 * @return true if interpretation was good, false otherwise
+	 */
+	boolean execute(List<String> cells, long timeout, OutputListener outputListener, OutputSink output,
+			ExecutionResult result) {
+		WorkerSlot slot = acquireAnySlot();
+		try {
+			return execute(slot, null, cells, timeout, outputListener, output, result);
+		} finally {
+			recycleIfDue(slot);
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * executes request code in the session namespace kept by the session worker,
+	 * the session history is replayed first only if the worker does not hold the
+	 * session yet (first request or worker restarted). With checkpoints, the
+	 * session is restored from its latest checkpoint and only the cells saved
+	 * after it are replayed. Request code is not executed when the session could
+	 * not be rebuilt, the result then holds the replay error
+	 *
+	 * @param sessionKey     session state key
+	 * @param sessionHistory session code lines, read only when replay is needed
+	 * @param code           request code
+	 * @param timeout        maximum execution time in milliseconds
+	 * @param outputListener receives request code output while it is produced,
+	 *                       null if not streaming
+	 * @param output         bounded capture of the output returned in the result
+	 * @param result         interpretation result
+	 * @return true if interpretation was good, false otherwise
+	 */
+	boolean executeInSession(String sessionKey, Supplier<List<String>> sessionHistory, String code, long timeout,
+			OutputListener outputListener, OutputSink output, ExecutionResult result) {
+		WorkerSlot slot = acquireSessionSlot(sessionKey);
+		try {
+			return prepareSession(slot, sessionKey, sessionHistory, timeout, result)
+					&& execute(slot, sessionKey, Collections.singletonList(code), timeout, outputListener, output,
+							result);
+		} finally {
+			recycleIfDue(slot);
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * executes a batch of cells in one call on the first available worker, in a
+	 * fresh namespace where the preamble cells are executed first
+	 *
+	 * @param preamble    cells executed before the batch, their output is dropped
+	 * @param cells       code cells
+	 * @param stopOnError true to skip the cells following a failed one
+	 * @param timeout     maximum execution time of one cell in milliseconds
+	 * @param outputs     gives the bounded capture of each cell output
+	 * @param results     receives one result by executed cell
+	 * @return true if all cells were interpreted successfully, false otherwise
+	 */
+	boolean executeBatch(List<String> preamble, List<String> cells, boolean stopOnError, long timeout,
+			Supplier<OutputSink> outputs, List<ExecutionResult> results) {
+		WorkerSlot slot = acquireAnySlot();
+		try {
+			return executeBatch(slot, null, preamble, cells, stopOnError, timeout, outputs, results);
+		} finally {
+			recycleIfDue(slot);
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * executes a batch of cells in one call in the session namespace kept by the
+	 * session worker, the session is rebuilt first as in
+	 * {@link #executeInSession(String, Supplier, String, long, OutputListener, OutputSink, ExecutionResult)}
+	 *
+	 * @param sessionKey     session state key
+	 * @param sessionHistory session code lines, read only when replay is needed
+	 * @param cells          code cells
+	 * @param stopOnError    true to skip the cells following a failed one
+	 * @param timeout        maximum execution time of one cell in milliseconds
+	 * @param outputs        gives the bounded capture of each cell output
+	 * @param results        receives one result by executed cell
+	 * @return true if all cells were interpreted successfully, false otherwise
+	 */
+	boolean executeBatchInSession(String sessionKey, Supplier<List<String>> sessionHistory, List<String> cells,
+			boolean stopOnError, long timeout, Supplier<OutputSink> outputs, List<ExecutionResult> results) {
+		WorkerSlot slot = acquireSessionSlot(sessionKey);
+		try {
+			ExecutionResult prepareResult = new ExecutionResult();
+			if (!prepareSession(slot, sessionKey, sessionHistory, timeout, prepareResult)) {
+				results.add(prepareResult);
+				return false;
+			}
+			return executeBatch(slot, sessionKey, Collections.<String>emptyList(), cells, stopOnError, timeout,
+					outputs, results);
+		} finally {
+			recycleIfDue(slot);
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * locks the slot the session is pinned to, assigns one in round robin order to
+	 * a new session
+	 */
+	private WorkerSlot acquireSessionSlot(String sessionKey) {
+		WorkerSlot slot = sessionSlots.computeIfAbsent(sessionKey,
+				key -> slots[Math.abs(nextSlot.getAndIncrement() % slots.length)]);
+		slot.lock.lock();
+		return slot;
+	}
+
+	/**
+	 * makes sure the slot worker holds the session namespace, restores it when the
+	 * worker does not, otherwise takes a checkpoint if one is due
+	 *
+	 * @param timeout maximum time in milliseconds given to restore the checkpoint
+	 *                and to replay each cell of the history
+	 * @param result  receives the error when the session could not be rebuilt
+	 * @return true if the worker holds the session state, false otherwise
+	 */
+	private boolean prepareSession(WorkerSlot slot, String sessionKey, Supplier<List<String>> sessionHistory,
+			long timeout, ExecutionResult result) {
+		PythonWorker worker = slot.worker;
+		if (worker == null || !worker.isAlive() || !worker.hasNamespace(sessionKey)) {
+			List<String> history = sessionHistory.get();
+			if (history == null || history.isEmpty()) {
+				return true;
+			}
+			logger.info("Python worker does not hold session '" + sessionKey + "', replaying its history");
+			return restore(slot, sessionKey, history, timeout, result);
+		}
+		if (checkpoints != null) {
+			checkpointIfDue(slot, sessionKey, sessionHistory.get(), timeout);
+		}
+		return true;
+	}
+
+	/**
+	 * rebuilds the session namespace inside the slot worker : from the latest
+	 * checkpoint if any, then by replaying the cells it does not cover. Both run
+	 * on the same worker, a worker dying in between fails the restore instead of
+	 * replaying the remaining cells into an empty namespace
+	 *
+	 * @return true if the session state was rebuilt, false otherwise
+	 */
+	private boolean restore(WorkerSlot slot, String sessionKey, List<String> history, long timeout,
+			ExecutionResult result) {
+		if (closed) {
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			result.setResultContent("Error executing command, : interpreter is shutting down");
+			return false;
+		}
+		if (!startWorker(slot, result)) {
+			return false;
+		}
+		PythonWorker worker = slot.worker;
+		int restoredCells = 0;
+		SessionCheckpoints.Checkpoint checkpoint = checkpoints != null
+				? checkpoints.latest(sessionKey, history.size())
+				: null;
+		if (checkpoint != null) {
+			ExecutionResult restoreResult = new ExecutionResult();
+			if (worker.restore(sessionKey, checkpoint.file, timeout, restoreResult)) {
+				logger.info("Session '" + sessionKey + "' restored from checkpoint of " + checkpoint.cells + " cells");
+				restoredCells = checkpoint.cells;
+			} else {
+				logger.warn("Restoring session '" + sessionKey + "' from checkpoint failed, replaying its history : "
+						+ restoreResult.getResultContent());
+				if (!worker.isAlive()) {
+					// killed by the restore timeout, the whole history is replayed on a new worker
+					if (!startWorker(slot, result)) {
+						return false;
+					}
+					worker = slot.worker;
+				}
+			}
+		}
+		if (restoredCells < history.size()) {
+			return replay(worker, sessionKey, history.subList(restoredCells, history.size()), timeout, result);
+		}
+		return true;
+	}
+
+	/**
+	 * saves the session namespace to a new checkpoint if enough cells were saved
+	 * since the last one. The namespace held by the worker matches the session
+	 * history, as the request code is not executed yet
+	 */
+	private void checkpointIfDue(WorkerSlot slot, String sessionKey, List<String> history, long timeout) {
+		int cells = history != null ? history.size() : 0;
+		if (!checkpoints.isDue(sessionKey, cells)) {
+			return;
+		}
+		ExecutionResult checkpointResult = new ExecutionResult();
+		boolean saved = slot.worker.checkpoint(sessionKey, checkpoints.newCheckpointFile(sessionKey, cells), timeout,
+				checkpointResult);
+		if (saved) {
+			logger.info("Checkpoint of session '" + sessionKey + "' saved : " + checkpointResult.getResultContent());
+		} else {
+			logger.warn("Checkpoint of session '" + sessionKey + "' failed : " + checkpointResult.getResultContent());
+		}
+		checkpoints.checkpointTaken(sessionKey, cells, saved);
+	}
+
+	/**
+	 * replays session history on the worker, each cell gets its own timeout. Its
+	 * output is dropped and only a short part of the failing cell output is kept
+	 * in the error
+	 *
+	 * @return true if the whole history was replayed, false otherwise
+	 */
+	private boolean replay(PythonWorker worker, String sessionKey, List<String> history, long timeout,
+			ExecutionResult result) {
+		ExecutionResult replayResult = new ExecutionResult();
+		try (OutputSink replayOutput = new OutputSink(REPLAY_OUTPUT_SIZE, REPLAY_OUTPUT_SIZE, REPLAY_OUTPUT_SIZE)) {
+			if (worker.replay(sessionKey, history, timeout, replayOutput, replayResult)) {
+				return true;
+			}
+		}
+		logger.warn("Replaying history of session '" + sessionKey + "' failed : " + replayResult.getResultContent());
+		result.setResultType(ExecutionResult.RESULT_ERROR);
+		result.setResultContent("Error executing command, : session state could not be rebuilt, replaying its history"
+				+ " failed : " + replayResult.getResultContent());
+		return false;
+	}
+
+	/**
+	 * executes cells on the slot worker, starts a worker if the slot has none or
+	 * if the previous one died
+	 */
+	private boolean execute(WorkerSlot slot, String namespace, List<String> cells, long timeout,
+			OutputListener outputListener, OutputSink output, ExecutionResult result) {
+		if (closed) {
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			result.setResultContent("Error executing command, : interpreter is shutting down");
+			return false;
+		}
+		return startWorker(slot, result)
+				&& slot.worker.execute(namespace, cells, timeout, outputListener, output, result);
+	}
+
+	/**
+	 * executes a batch of cells on the slot worker, starts a worker if the slot has
+	 * none or if the previous one died
+	 */
+	private boolean executeBatch(WorkerSlot slot, String namespace, List<String> preamble, List<String> cells,
+			boolean stopOnError, long timeout, Supplier<OutputSink> outputs, List<ExecutionResult> results) {
+		ExecutionResult result = new ExecutionResult();
+		if (closed) {
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			result.setResultContent("Error executing command, : interpreter is shutting down");
+		} else if (startWorker(slot, result)) {
+			return slot.worker.executeBatch(namespace, preamble, cells, stopOnError, timeout, outputs, results);
+		}
+		results.add(result);
+		return false;
+	}
+
+	/**
+	 * starts a worker if the slot has none or if the previous one died, a worker
+	 * idle for longer than the health check interval is checked first
+	 *
+	 * @return true if the slot has a live worker, false if it could not be started
+	 */
+	private boolean startWorker(WorkerSlot slot, ExecutionResult result) {
+		try {
+			if (slot.worker != null && slot.worker.isAlive() && options.healthCheckInterval > 0
+					&& slot.worker.getIdleTime() > options.healthCheckInterval) {
+				ExecutionResult pingResult = new ExecutionResult();
+				if (!slot.worker.ping(options.startTimeout, pingResult)) {
+					logger.warn("Python worker failed its health check : " + pingResult.getResultContent());
+				}
+			}
+			if (slot.worker == null || !slot.worker.isAlive()) {
+				if (slot.worker != null) {
+					logger.warn("Python worker is not alive anymore, replacing it");
+					slot.worker.destroy();
+				}
+				slot.worker = new PythonWorker(executorPath, options.preload, metrics);
+			}
+			return true;
+		} catch (IOException e) {
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			result.setResultContent("Error executing command, : " + e.getMessage());
+			logger.debug("Error starting python worker : " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * kills the slot worker once it reached its executions count, a new worker is
+	 * started in background. A worker which died during the request (timeout) is
+	 * replaced the same way. Sessions held by the worker are rebuilt on their next
+	 * request
+	 */
+	private void recycleIfDue(WorkerSlot slot) {
+		PythonWorker worker = slot.worker;
+		if (worker == null) {
+			return;
+		}
+		if (!worker.isAlive()) {
+			startInBackground(slot);
+		} else if (options.maxExecutions > 0 && worker.getExecutions() >= options.maxExecutions) {
+			logger.info("Python worker executed " + worker.getExecutions() + " requests, recycling it");
+			worker.destroy();
+			slot.worker = null;
+			startInBackground(slot);
+		}
+	}
+
+	/**
+	 * starts the slot worker on the starter thread and waits for it to be ready,
+	 * nothing is done if the slot already has a live worker
+	 */
+	private void startInBackground(WorkerSlot slot) {
+		if (closed) {
+			return;
+		}
+		starter.execute(() -> {
+			slot.lock.lock();
+			try {
+				if (closed || (slot.worker != null && slot.worker.isAlive())) {
+					return;
+				}
+				ExecutionResult startResult = new ExecutionResult();
+				if (!startWorker(slot, startResult) || !slot.worker.ping(options.startTimeout, startResult)) {
+					logger.warn("Python worker could not be started in background, it will be started on demand : "
+							+ startResult.getResultContent());
+				}
+			} finally {
+				slot.lock.unlock();
+			}
+		});
+	}
+
+	/**
+	 * locks the first free slot holding a live worker, then the first free slot,
+	 * or waits for the next one in round robin order if all slots are busy
+	 */
+	private WorkerSlot acquireAnySlot() {
+		int start = Math.abs(nextSlot.getAndIncrement() % slots.length);
+		for (int i = 0; i < slots.length; i++) {
+			WorkerSlot slot = slots[(start + i) % slots.length];
+			PythonWorker worker = slot.worker;
+			if (worker != null && worker.isAlive() && slot.lock.tryLock()) {
+				return slot;
+			}
+		}
+		for (int i = 0; i < slots.length; i++) {
+			WorkerSlot slot = slots[(start + i) % slots.length];
+			if (slot.lock.tryLock()) {
+				return slot;
+			}
+		}
+		logger.debug("All python workers are busy, waiting for one");
+		WorkerSlot slot = slots[start];
+		slot.lock.lock();
+		return slot;
+	}
+
+	/**
+	 * releases everything held for a session : its namespace inside the session
+	 * worker, its slot assignment and its checkpoints. Waits for the running
+	 * request of the session worker, if any
+	 *
+	 * @param sessionKey session state key
+	 * @param timeout    maximum time in milliseconds given to the worker
+	 */
+	void releaseSession(String sessionKey, long timeout) {
+		WorkerSlot slot = sessionSlots.remove(sessionKey);
+		if (slot != null) {
+			slot.lock.lock();
+			try {
+				PythonWorker worker = slot.worker;
+				if (worker != null && worker.isAlive() && worker.hasNamespace(sessionKey)) {
+					ExecutionResult dropResult = new ExecutionResult();
+					if (!worker.drop(sessionKey, timeout, dropResult)) {
+						logger.warn("Dropping session '" + sessionKey + "' from python worker failed : "
+								+ dropResult.getResultContent());
+					}
+				}
+			} finally {
+				slot.lock.unlock();
+			}
+		}
+		if (checkpoints != null) {
+			checkpoints.delete(sessionKey);
+		}
+	}
+
+	/**
+	 * kills all workers
+	 */
+	void close() {
+		closed = true;
+		starter.shutdownNow();
+		for (WorkerSlot slot : slots) {
+			PythonWorker worker = slot.worker;
+			if (worker != null) {
+				worker.destroy();
+			}
+		}
+		sessionSlots.clear();
+	}
+
+	/**
+	 * Pool sizing and workers lifecycle settings
+	 */
+	static class Options {
+		/**
+		 * Workers pre-forked when the pool is warmed up
+		 */
+		int minSize;
+		/**
+		 * Maximum workers count
+		 */
+		int maxSize;
+		/**
+		 * Modules imported by each worker on startup
+		 */
+		List<String> preload = Collections.emptyList();
+		/**
+		 * Requests executed by a worker before it is replaced, 0 or less to keep
+		 * workers until they die
+		 */
+		int maxExecutions;
+		/**
+		 * Idle time in milliseconds after which a worker is checked before being
+		 * reused, 0 or less to disable health checks
+		 */
+		long healthCheckInterval;
+		/**
+		 * Maximum time in milliseconds given to a worker to answer a health check,
+		 * modules preloading included
+		 */
+		long startTimeout = Interpreter.DEFAULT_TIMEOUT;
+
+		Options(int maxSize) {
+			this.maxSize = maxSize;
+		}
+	}
+
+	/**
+	 * Place of one worker in the pool, the lock guards the worker and is held for
+	 * a whole request
+	 */
+	private static class WorkerSlot {
+		private final ReentrantLock lock = new ReentrantLock();
+		private volatile PythonWorker worker;
+	}
+}
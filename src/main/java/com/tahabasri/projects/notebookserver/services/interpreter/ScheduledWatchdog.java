@@ -0,0 +1,58 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.exec.ExecuteWatchdog;
+
+/**
+ * Process watchdog sharing one timer thread with all other watchdogs, where the
+ * commons-exec watchdog starts a thread for each execution. Thousands of
+ * concurrent executions then cost no extra thread. The process is killed when
+ * the timeout is reached before the watchdog is stopped
+ *
+ * @author Taha BASRI
+ *
+ */
+class ScheduledWatchdog extends ExecuteWatchdog {
+
+	private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+	private final long timeout;
+	private ScheduledFuture<?> timeoutTask;
+
+	/**
+	 * @param timeout maximum execution time in milliseconds
+	 */
+	ScheduledWatchdog(long timeout) {
+		// no timeout given to the parent, it would start its own thread
+		super(INFINITE_TIMEOUT);
+		this.timeout = timeout;
+	}
+
+	private static ScheduledThreadPoolExecutor createTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "interpreter-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// most executions end before their timeout, cancelled tasks must not pile up
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	@Override
+	public synchronized void start(Process processToMonitor) {
+		super.start(processToMonitor);
+		timeoutTask = timer.schedule(() -> timeoutOccured(null), timeout, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (timeoutTask != null) {
+			timeoutTask.cancel(false);
+		}
+		super.stop();
+	}
+}
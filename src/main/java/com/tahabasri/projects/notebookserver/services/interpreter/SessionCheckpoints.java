@@ -0,0 +1,249 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Checkpoint files of sessions state. Each session has its own directory named
+ * after the session state key, holding its latest checkpoint file named after
+ * the count of session cells it covers. A session is restored from its latest
+ * checkpoint then the cells saved after it are replayed, so at most "interval"
+ * cells are replayed whatever the session length.
+ *
+ * Checkpoints are unpickled by workers, the checkpoints directory is then kept
+ * private to the server user
+ *
+ * @author Taha BASRI
+ *
+ */
+class SessionCheckpoints {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	private static final String EXTENSION = ".ckpt";
+
+	private final File directory;
+	private final int interval;
+
+	/**
+	 * Session cells count covered by the last checkpoint taken (or attempted) by
+	 * this server, to know when the next one is due
+	 */
+	private final Map<String, Integer> checkpointedCells = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory checkpoints root directory
+	 * @param interval  new session cells count after which a new checkpoint is
+	 *                  taken
+	 */
+	SessionCheckpoints(File directory, int interval) {
+		this.directory = directory;
+		this.interval = Math.max(1, interval);
+	}
+
+	File getDirectory() {
+		return directory;
+	}
+
+	int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * creates the checkpoints directory if needed and restricts it to the server
+	 * user, where the file system supports permissions
+	 *
+	 * @return true if the directory is ready, false if it could not be created or
+	 *         restricted
+	 */
+	boolean prepareDirectory() {
+		Path path = directory.toPath();
+		try {
+			if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+				Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+				if (!Files.isDirectory(path)) {
+					Files.createDirectories(path, PosixFilePermissions.asFileAttribute(ownerOnly));
+				}
+				// fails when the directory belongs to another user
+				Files.setPosixFilePermissions(path, ownerOnly);
+			} else if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("directory can not be created");
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			logger.error("Checkpoints are disabled, unable to prepare private checkpoints directory " + directory
+					+ " : " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * checks if a new checkpoint should be taken
+	 *
+	 * @param sessionKey session state key
+	 * @param cells      current session cells count
+	 * @return true if at least "interval" cells were saved since the last
+	 *         checkpoint
+	 */
+	boolean isDue(String sessionKey, int cells) {
+		Integer checkpointed = checkpointedCells.get(sessionKey);
+		if (checkpointed == null) {
+			Checkpoint latest = latest(sessionKey, cells);
+			checkpointed = latest != null ? latest.cells : 0;
+			checkpointedCells.put(sessionKey, checkpointed);
+		}
+		return cells - checkpointed >= interval;
+	}
+
+	/**
+	 * gets the file of a new checkpoint, creating the session directory if needed
+	 *
+	 * @param sessionKey session state key
+	 * @param cells      session cells count covered by the checkpoint
+	 * @return checkpoint file
+	 */
+	File newCheckpointFile(String sessionKey, int cells) {
+		File sessionDirectory = sessionDirectory(sessionKey);
+		if (!sessionDirectory.isDirectory() && !sessionDirectory.mkdirs()) {
+			logger.warn("Unable to create checkpoints directory : " + sessionDirectory);
+		}
+		return new File(sessionDirectory, cells + EXTENSION);
+	}
+
+	/**
+	 * records the outcome of a checkpoint, older checkpoints of the session are
+	 * deleted when it succeeded
+	 *
+	 * @param sessionKey session state key
+	 * @param cells      session cells count covered by the checkpoint
+	 * @param saved      true if the checkpoint was saved
+	 */
+	void checkpointTaken(String sessionKey, int cells, boolean saved) {
+		// a failed checkpoint is retried only after another interval
+		checkpointedCells.put(sessionKey, cells);
+		if (saved) {
+			File[] files = sessionDirectory(sessionKey).listFiles();
+			if (files != null) {
+				for (File file : files) {
+					int fileCells = cellsOf(file);
+					if (fileCells >= 0 && fileCells < cells && !file.delete()) {
+						logger.warn("Unable to delete old checkpoint : " + file);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * finds the latest checkpoint of a session that does not cover more cells than
+	 * the session has
+	 *
+	 * @param sessionKey session state key
+	 * @param maxCells   session cells count
+	 * @return latest checkpoint, null if there is none
+	 */
+	Checkpoint latest(String sessionKey, int maxCells) {
+		File[] files = sessionDirectory(sessionKey).listFiles();
+		Checkpoint latest = null;
+		if (files != null) {
+			for (File file : files) {
+				int cells = cellsOf(file);
+				if (cells > 0 && cells <= maxCells && (latest == null || cells > latest.cells)) {
+					latest = new Checkpoint(file, cells);
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * deletes all checkpoints of a session
+	 *
+	 * @param sessionKey session state key
+	 */
+	void delete(String sessionKey) {
+		checkpointedCells.remove(sessionKey);
+		deleteDirectory(sessionDirectory(sessionKey));
+	}
+
+	/**
+	 * deletes checkpoints of the sessions which do not exist anymore, left by a
+	 * previous run
+	 *
+	 * @param sessionKeys state keys of the existing sessions
+	 */
+	void retain(Set<String> sessionKeys) {
+		Set<String> retained = sessionKeys.stream().map(SessionCheckpoints::directoryName)
+				.collect(Collectors.toSet());
+		File[] sessionDirectories = directory.listFiles(File::isDirectory);
+		if (sessionDirectories == null) {
+			return;
+		}
+		for (File sessionDirectory : sessionDirectories) {
+			if (!retained.contains(sessionDirectory.getName())) {
+				logger.info("Deleting checkpoints of unknown session : " + sessionDirectory.getName());
+				deleteDirectory(sessionDirectory);
+			}
+		}
+	}
+
+	private static void deleteDirectory(File sessionDirectory) {
+		File[] files = sessionDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete()) {
+					logger.warn("Unable to delete checkpoint : " + file);
+				}
+			}
+		}
+		sessionDirectory.delete();
+	}
+
+	private File sessionDirectory(String sessionKey) {
+		return new File(directory, directoryName(sessionKey));
+	}
+
+	private static String directoryName(String sessionKey) {
+		return sessionKey.replaceAll("[^A-Za-z0-9_-]", "_");
+	}
+
+	/**
+	 * @return cells count covered by a checkpoint file, -1 if the file is not a
+	 *         checkpoint
+	 */
+	private static int cellsOf(File file) {
+		String name = file.getName();
+		if (!name.endsWith(EXTENSION)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(0, name.length() - EXTENSION.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Checkpoint file and the count of session cells it covers
+	 */
+	static class Checkpoint {
+		final File file;
+		final int cells;
+
+		Checkpoint(File file, int cells) {
+			this.file = file;
+			this.cells = cells;
+		}
+	}
+}
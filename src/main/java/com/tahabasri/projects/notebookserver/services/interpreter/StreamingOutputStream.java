@@ -0,0 +1,90 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream forwarding process output to an output listener, text is sent
+ * on each new line or when the buffer is full so at most one buffer of output
+ * is kept in memory
+ *
+ * @author Taha BASRI
+ *
+ */
+class StreamingOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputListener outputListener;
+	private final String stream;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int count;
+
+	/**
+	 * @param outputListener listener receiving output chunks
+	 * @param stream         output stream name
+	 */
+	StreamingOutputStream(OutputListener outputListener, String stream) {
+		this.outputListener = outputListener;
+		this.stream = stream;
+	}
+
+	@Override
+	public synchronized void write(int b) {
+		buffer[count++] = (byte) b;
+		if (b == '\n' || count == buffer.length) {
+			send();
+		}
+	}
+
+	@Override
+	public synchronized void write(byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			write(bytes[i]);
+		}
+	}
+
+	@Override
+	public synchronized void flush() {
+		if (count > 0) {
+			send();
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	/**
+	 * sends buffered bytes, an incomplete UTF-8 character at the end of a full
+	 * buffer is kept for the next chunk
+	 */
+	private void send() {
+		int end = count;
+		if (buffer[count - 1] != '\n' && completeCharactersEnd() > 0) {
+			end = completeCharactersEnd();
+		}
+		outputListener.onOutput(stream, new String(buffer, 0, end, StandardCharsets.UTF_8));
+		System.arraycopy(buffer, end, buffer, 0, count - end);
+		count -= end;
+	}
+
+	/**
+	 * @return index following the last complete UTF-8 character in buffer
+	 */
+	private int completeCharactersEnd() {
+		// a UTF-8 character is at most 4 bytes, look for the start of the last one
+		for (int i = count - 1; i >= Math.max(0, count - 4); i--) {
+			int b = buffer[i] & 0xFF;
+			if (b < 0x80) {
+				return count;
+			}
+			if (b >= 0xC0) {
+				int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+				return i + length <= count ? count : i;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,98 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+
+/**
+ * Fake interpreter launching no process, used to load test the server without
+ * python : the whole request pipeline (parsing, sessions, persistence, HTTP) is
+ * measured without the interpreter own cost.
+ *
+ * It behaves like a minimal python interpreter :
+ * <ul>
+ * <li>assignments ("a = 1") give no output, so they are saved in session</li>
+ * <li>"sleep <i>ms</i>" waits for the given time and gives no output</li>
+ * <li>any other code is echoed as output</li>
+ * </ul>
+ * Each execution first waits for "interpreter.stub.delay" milliseconds (0 by
+ * default), executions longer than the interpreter timeout fail like a killed
+ * process
+ *
+ * @author Taha BASRI
+ *
+ */
+public class StubInterpreter extends Interpreter {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	private static final Pattern ASSIGNMENT = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*\\s*=[^=].*", Pattern.DOTALL);
+	private static final Pattern SLEEP = Pattern.compile("sleep\\s+(\\d+)");
+
+	public StubInterpreter(InterpreterContext context) {
+		super(context);
+	}
+
+	@Override
+	public boolean interpret(InterpretationRequest interpretationRequest, ExecutionContext context,
+			ExecutionResult result) {
+		String code = interpretationRequest.getCode();
+		long duration = getDelay(context);
+		String output = code;
+
+		Matcher sleep = SLEEP.matcher(code);
+		if (sleep.matches()) {
+			duration += Long.parseLong(sleep.group(1));
+			output = "";
+		} else if (ASSIGNMENT.matcher(code).matches()) {
+			output = "";
+		}
+
+		long timeout = context.getTimeout();
+		try {
+			Thread.sleep(Math.min(duration, timeout));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (duration >= timeout) {
+			context.getMetrics().watchdogKilled();
+			result.setResultType(ExecutionResult.RESULT_ERROR);
+			result.setResultContent(
+					"Error executing command, due to syntax or execution time : timeout of " + timeout + "ms reached");
+			return false;
+		}
+
+		result.setResultType(ExecutionResult.RESULT_OK);
+		if (context.isStreaming() && !output.isEmpty()) {
+			context.getOutputListener().onOutput(OutputListener.STDOUT, output + "\n");
+			result.setResultContent("");
+		} else {
+			result.setResultContent(output);
+		}
+		context.getMetrics().outputCaptured(result.getResultType(), output.getBytes(StandardCharsets.UTF_8).length);
+		return true;
+	}
+
+	/**
+	 * @return simulated execution time in milliseconds, from "interpreter.stub.delay"
+	 *         property
+	 */
+	private long getDelay(ExecutionContext context) {
+		String delay = context.getProperty("delay");
+		if (delay == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(delay.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Wrong stub interpreter delay : " + delay);
+			return 0;
+		}
+	}
+}
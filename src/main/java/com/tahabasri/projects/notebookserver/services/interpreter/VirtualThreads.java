@@ -0,0 +1,72 @@
+package com.tahabasri.projects.notebookserver.services.interpreter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Virtual threads support, available from java 21. The application is built for
+ * java 8, virtual threads are then created by reflection and callers fall back
+ * to platform threads when the running JVM does not support them
+ *
+ * @author Taha BASRI
+ *
+ */
+public final class VirtualThreads {
+	private static final Logger logger = LogManager.getLogger(Interpreter.class);
+
+	private static final Method OF_VIRTUAL = findThreadMethod("ofVirtual");
+	private static final Method IS_VIRTUAL = findThreadMethod("isVirtual");
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * creates a factory of virtual threads named after the given prefix followed by
+	 * a counter
+	 *
+	 * @param namePrefix threads name prefix
+	 * @return virtual threads factory, null if the JVM does not support virtual
+	 *         threads
+	 */
+	public static ThreadFactory factory(String namePrefix) {
+		if (OF_VIRTUAL == null) {
+			return null;
+		}
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			// java 19 and 20 only have virtual threads as a preview feature
+			logger.warn("Virtual threads are not available : " + e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * @param thread thread to check
+	 * @return true if the thread is a virtual thread, false otherwise
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static Method findThreadMethod(String name) {
+		try {
+			return Thread.class.getMethod(name);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,269 @@
+"""
+Resident python worker used by the notebook server when the python interpreter
+runs in 'worker' mode.
+
+Modules given as command line arguments are imported once on startup, before
+the first request is read, so cells importing them find them already loaded.
+
+The worker reads framed requests from its standard input and writes framed
+responses to its standard output, every string is sent as a 4 bytes big-endian
+length followed by its UTF-8 bytes :
+  request  : 'X' <namespace> <cells count> <cell>...
+                                          execute cells one after the other inside the
+                                          session namespace, a fresh namespace is used
+                                          when the namespace key is empty
+             'S' <namespace> <cells count> <cell>...
+                                          same as 'X' but output is streamed while it
+                                          is produced, using 'C' frames
+             'P' <namespace> <path>       checkpoint : pickles the session namespace into
+                                          a compressed file, fails if a variable can not
+                                          be restored later
+             'R' <namespace> <path>       restores the session namespace from a
+                                          checkpoint file
+             'D' <namespace>              drops the session namespace, its variables
+                                          are released
+             'B' <namespace> <stop on error> <preamble count> <preamble cell>...
+                 <cells count> <cell>...  batch : executes the preamble cells (session
+                                          history, output dropped) then each cell on its
+                                          own, sending one 'O' or 'E' response by cell.
+                                          When stop on error is 1, cells following a
+                                          failed one are skipped
+             'H'                          health check : answers 'O' once the worker is
+                                          started and its modules are preloaded
+  response : 'C' <'o'|'e'> <chunk>        streaming only : stdout or stderr chunk, sent
+                                          on each new line or when CHUNK_SIZE characters
+                                          are buffered
+             'O' <output>                 cells were executed successfully
+             'E' <output>                 a cell failed, output ends with the traceback
+                                          (empty output when streaming), or the
+                                          checkpoint operation failed
+"""
+import gc
+import importlib
+import os
+import pickle
+import struct
+import sys
+import traceback
+import types
+import zlib
+
+try:
+    from StringIO import StringIO
+except ImportError:
+    from io import StringIO
+
+
+def read_exactly(stream, size):
+    data = b''
+    while len(data) < size:
+        chunk = stream.read(size - len(data))
+        if not chunk:
+            raise EOFError()
+        data += chunk
+    return data
+
+
+def read_int(stream):
+    return struct.unpack('>i', read_exactly(stream, 4))[0]
+
+
+def read_string(stream):
+    return read_exactly(stream, read_int(stream)).decode('utf-8')
+
+
+def write_string(stream, value):
+    if not isinstance(value, bytes):
+        value = value.encode('utf-8')
+    stream.write(struct.pack('>i', len(value)))
+    stream.write(value)
+
+
+# maximum characters buffered by a streamed output before being sent
+CHUNK_SIZE = 8192
+
+# session namespaces, kept alive between requests
+namespaces = {}
+
+
+class StreamedOutput(object):
+    """file like object sending written text as 'C' frames, at most CHUNK_SIZE
+    characters are kept in memory"""
+
+    def __init__(self, responses, stream):
+        self.responses = responses
+        self.stream = stream
+        self.buffer = []
+        self.size = 0
+
+    def write(self, text):
+        if isinstance(text, bytes):
+            text = text.decode('utf-8', 'replace')
+        self.buffer.append(text)
+        self.size += len(text)
+        if self.size >= CHUNK_SIZE or '\n' in text:
+            self.flush()
+
+    def writelines(self, lines):
+        for line in lines:
+            self.write(line)
+
+    def flush(self):
+        if not self.size:
+            return
+        data = ''.join(self.buffer)
+        self.buffer = []
+        self.size = 0
+        for start in range(0, len(data), CHUNK_SIZE):
+            self.responses.write(b'C')
+            self.responses.write(self.stream)
+            write_string(self.responses, data[start:start + CHUNK_SIZE])
+        self.responses.flush()
+
+
+def new_namespace():
+    return {'__name__': '__main__', '__builtins__': __builtins__}
+
+
+def checkpoint(namespace, path):
+    """pickles the namespace variables into a compressed file, modules are saved by
+    name and imported again on restore. Functions, classes and instances of classes
+    defined by session code can not be restored outside of their cells, the
+    checkpoint fails when the namespace holds one"""
+    modules = {}
+    variables = {}
+    for name, value in namespace.items():
+        if name in ('__builtins__', '__name__'):
+            continue
+        if isinstance(value, types.ModuleType):
+            modules[name] = value.__name__
+        elif getattr(value, '__module__', None) == '__main__' \
+                or getattr(type(value), '__module__', None) == '__main__':
+            raise ValueError("'%s' is defined by session code and can not be saved" % name)
+        else:
+            variables[name] = value
+    # variables are pickled together so objects shared by several variables stay shared
+    data = zlib.compress(pickle.dumps({'modules': modules, 'variables': variables}, pickle.HIGHEST_PROTOCOL))
+    temporary = path + '.tmp'
+    with open(temporary, 'wb') as checkpoint_file:
+        checkpoint_file.write(data)
+    if os.path.exists(path):
+        os.remove(path)
+    os.rename(temporary, path)
+    return '%d variables and %d modules saved' % (len(variables), len(modules))
+
+
+def restore(path):
+    """builds a namespace from a checkpoint file"""
+    with open(path, 'rb') as checkpoint_file:
+        state = pickle.loads(zlib.decompress(checkpoint_file.read()))
+    namespace = new_namespace()
+    for name, module in state['modules'].items():
+        __import__(module)
+        namespace[name] = sys.modules[module]
+    namespace.update(state['variables'])
+    return namespace
+
+
+def execute(namespace, cells, responses=None):
+    if responses is None:
+        stdout = stderr = output = StringIO()
+    else:
+        stdout = StreamedOutput(responses, b'o')
+        stderr = StreamedOutput(responses, b'e')
+        output = None
+    saved_streams = sys.stdout, sys.stderr
+    sys.stdout, sys.stderr = stdout, stderr
+    try:
+        for cell in cells:
+            exec(compile(cell, '<cell>', 'exec'), namespace)
+        status = b'O'
+    except BaseException:
+        error_type, error, trace = sys.exc_info()
+        # skip the worker own frame, only user code is relevant
+        traceback.print_exception(error_type, error, trace.tb_next)
+        status = b'E'
+    finally:
+        sys.stdout, sys.stderr = saved_streams
+    if output is None:
+        stdout.flush()
+        stderr.flush()
+        return status, ''
+    return status, output.getvalue()
+
+
+def preload(modules):
+    for module in modules:
+        try:
+            importlib.import_module(module)
+        except Exception:
+            # a missing module must not prevent the worker from starting
+            sys.stderr.write('Could not preload module %s :\n' % module)
+            traceback.print_exc()
+
+
+def main():
+    # keep private copies of the protocol pipes, user code must never write into them
+    requests = os.fdopen(os.dup(0), 'rb')
+    responses = os.fdopen(os.dup(1), 'wb')
+    os.dup2(os.open(os.devnull, os.O_RDONLY), 0)
+    os.dup2(2, 1)
+    preload(sys.argv[1:])
+
+    while True:
+        try:
+            operation = read_exactly(requests, 1)
+        except EOFError:
+            return
+
+        if operation == b'B':
+            key = read_string(requests)
+            stop_on_error = read_exactly(requests, 1) == b'\x01'
+            preamble = [read_string(requests) for _ in range(read_int(requests))]
+            cells = [read_string(requests) for _ in range(read_int(requests))]
+            namespace = namespaces.setdefault(key, new_namespace()) if key else new_namespace()
+            if preamble:
+                execute(namespace, preamble)
+            for cell in cells:
+                status, output = execute(namespace, [cell])
+                responses.write(status)
+                write_string(responses, output)
+                responses.flush()
+                if status == b'E' and stop_on_error:
+                    break
+            continue
+        elif operation in (b'X', b'S'):
+            key = read_string(requests)
+            cells = [read_string(requests) for _ in range(read_int(requests))]
+            namespace = namespaces.setdefault(key, new_namespace()) if key else new_namespace()
+            status, output = execute(namespace, cells, responses if operation == b'S' else None)
+        elif operation in (b'P', b'R'):
+            key = read_string(requests)
+            path = read_string(requests)
+            try:
+                if operation == b'P':
+                    output = checkpoint(namespaces[key], path)
+                else:
+                    namespaces[key] = restore(path)
+                    output = ''
+                status = b'O'
+            except Exception:
+                status, output = b'E', traceback.format_exc()
+        elif operation == b'D':
+            namespaces.pop(read_string(requests), None)
+            # session objects may reference each other, collect them right away
+            gc.collect()
+            status, output = b'O', ''
+        elif operation == b'H':
+            status, output = b'O', ''
+        else:
+            # unknown operation, the stream can not be trusted anymore
+            return
+
+        responses.write(status)
+        write_string(responses, output)
+        responses.flush()
+
+
+if __name__ == '__main__':
+    main()
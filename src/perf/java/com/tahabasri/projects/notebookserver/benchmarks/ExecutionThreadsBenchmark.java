@@ -0,0 +1,155 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.config.ExecutionPoolConfiguration;
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.ExecutionAdmission;
+import com.tahabasri.projects.notebookserver.services.ExecutionServiceImpl;
+import com.tahabasri.projects.notebookserver.services.InterpreterService;
+import com.tahabasri.projects.notebookserver.services.ResultCacheImpl;
+import com.tahabasri.projects.notebookserver.services.interpreter.OutputListener;
+
+/**
+ * Measures the execution service throughput with requests blocked on their
+ * interpreter (process wait simulated by a sleep), running on the platform
+ * threads pool against virtual threads. One operation is a burst of concurrent
+ * stateless requests. Virtual threads need java 21 or later, both modes run on
+ * the platform threads pool otherwise
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionThreadsBenchmark {
+
+	@Param({ "platform", "virtual" })
+	private String threads;
+
+	@Param({ "100", "1000" })
+	private int requests;
+
+	/**
+	 * Time in milliseconds each request waits for its interpreter
+	 */
+	@Param({ "10" })
+	private long executionTime;
+
+	private ThreadPoolTaskExecutor executor;
+	private ExecutionServiceImpl executionService;
+	private final List<InterpretationRequest> interpretationRequests = new ArrayList<>();
+
+	@Setup
+	public void setUp() {
+		// default pool size, with a queue holding a whole burst
+		ExecutionPoolConfiguration configuration = new ExecutionPoolConfiguration();
+		ReflectionTestUtils.setField(configuration, "poolSize", 8);
+		ReflectionTestUtils.setField(configuration, "queueCapacity", requests);
+		ReflectionTestUtils.setField(configuration, "threads", threads);
+		ReflectionTestUtils.setField(configuration, "maxConcurrency", requests);
+		executor = configuration.executionTaskExecutor();
+		executor.initialize();
+
+		executionService = new ExecutionServiceImpl();
+		ReflectionTestUtils.setField(executionService, "interpreterService", new WaitingInterpreterService());
+		ReflectionTestUtils.setField(executionService, "resultCache", new ResultCacheImpl());
+		ReflectionTestUtils.setField(executionService, "executor", executor);
+		ReflectionTestUtils.setField(executionService, "executionAdmission", new UnlimitedAdmission());
+
+		for (int i = 0; i < requests; i++) {
+			interpretationRequests.add(new InterpretationRequest(new UserRequestInput("%python print(" + i + ")", null)));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public int burst() {
+		List<CompletableFuture<ExecutionResult>> results = new ArrayList<>(requests);
+		for (InterpretationRequest interpretationRequest : interpretationRequests) {
+			results.add(executionService.submit(interpretationRequest));
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+		return results.size();
+	}
+
+	/**
+	 * Admission without limits, only threads limit running executions
+	 */
+	private static class UnlimitedAdmission implements ExecutionAdmission {
+
+		@Override
+		public void acquire(String interpreterName, String sessionId) {
+		}
+
+		@Override
+		public void release(String interpreterName) {
+		}
+	}
+
+	/**
+	 * Interpreter service only waiting, as a request waiting for its interpreter
+	 * process
+	 */
+	private class WaitingInterpreterService implements InterpreterService {
+
+		@Override
+		public InterpretationRequest validateAndParseInterpretationRequest(UserRequestInput interpretationRequest) {
+			return new InterpretationRequest(interpretationRequest);
+		}
+
+		@Override
+		public ExecutionResult interpretRequest(InterpretationRequest interpretationRequest) {
+			try {
+				Thread.sleep(executionTime);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ExecutionResult(ExecutionResult.RESULT_OK, "");
+		}
+
+		@Override
+		public ExecutionResult interpretRequest(InterpretationRequest interpretationRequest,
+				OutputListener outputListener) {
+			return interpretRequest(interpretationRequest);
+		}
+
+		@Override
+		public List<ExecutionResult> interpretBatch(List<InterpretationRequest> interpretationRequests,
+				boolean stopOnError) {
+			List<ExecutionResult> results = new ArrayList<>();
+			for (InterpretationRequest interpretationRequest : interpretationRequests) {
+				results.add(interpretRequest(interpretationRequest));
+			}
+			return results;
+		}
+	}
+}
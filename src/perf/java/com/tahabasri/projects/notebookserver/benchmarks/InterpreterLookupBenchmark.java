@@ -0,0 +1,89 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterDescriptor;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookupImpl;
+
+/**
+ * Measures interpreter resolution done on each request : interpreter instance,
+ * descriptor and properties lookup, against an environment holding the
+ * application interpreter properties among unrelated ones
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterLookupBenchmark {
+
+	private InterpreterLookupImpl interpreterLookup;
+	private InterpreterContext context;
+
+	@Setup
+	public void setUp() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("interpreter.python.timeout", "5000");
+		properties.put("interpreter.python.separator", ";");
+		properties.put("interpreter.python.mode", "worker");
+		properties.put("interpreter.python.worker.size", "2");
+		for (int i = 0; i < 100; i++) {
+			properties.put("application.property" + i, "value" + i);
+		}
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+
+		interpreterLookup = new InterpreterLookupImpl();
+		ReflectionTestUtils.setField(interpreterLookup, "env", environment);
+		interpreterLookup.refreshDescriptors();
+
+		// interpreters check that their executable exists, no process is launched here
+		String executable = new File(System.getProperty("java.home"), "bin/java").getPath();
+		context = new InterpreterContext("python", executable, null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		interpreterLookup.shutdownInterpreters();
+	}
+
+	@Benchmark
+	public Interpreter getInterpreter() {
+		return interpreterLookup.getInterpreter(context);
+	}
+
+	@Benchmark
+	public InterpreterDescriptor getDescriptor() {
+		return interpreterLookup.getDescriptor(context);
+	}
+
+	@Benchmark
+	public Properties readPropertiesForInterpreter() {
+		return interpreterLookup.readPropertiesForInterpreter("python");
+	}
+}
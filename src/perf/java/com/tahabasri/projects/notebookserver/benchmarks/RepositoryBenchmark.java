@@ -0,0 +1,129 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tahabasri.projects.notebookserver.JavaSpringBootNotebookServerApplication;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+import com.tahabasri.projects.notebookserver.services.SessionCache;
+
+/**
+ * Measures data access done by requests, against the application in-memory
+ * database : context and session lookups, session cells loading at various
+ * session lengths and sessions counts, and the same lookups through the
+ * sessions cache. The application is started without web server
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+	private static final Long SESSION_ID = 4242L;
+
+	@Param({ "10", "1000" })
+	private int sessionLength;
+
+	/**
+	 * Sessions of the interpreter other than the measured one, a session lookup
+	 * must not depend on it
+	 */
+	@Param({ "1", "10000" })
+	private int otherSessions;
+
+	private ConfigurableApplicationContext applicationContext;
+	private InterpreterContextRepository contextRepository;
+	private SessionRepository sessionRepository;
+	private SessionCellRepository sessionCellRepository;
+	private SessionCache sessionCache;
+	private TransactionTemplate readOnlyTransaction;
+	private InterpreterContext context;
+
+	@Setup
+	public void setUp() {
+		applicationContext = new SpringApplicationBuilder(JavaSpringBootNotebookServerApplication.class).web(false)
+				.properties("session.persistence.mode=sync", "session.eviction.interval=0", "logging.level.root=warn")
+				.run();
+		contextRepository = applicationContext.getBean(InterpreterContextRepository.class);
+		sessionRepository = applicationContext.getBean(SessionRepository.class);
+		sessionCellRepository = applicationContext.getBean(SessionCellRepository.class);
+		sessionCache = applicationContext.getBean(SessionCache.class);
+		readOnlyTransaction = new TransactionTemplate(applicationContext.getBean(PlatformTransactionManager.class));
+		readOnlyTransaction.setReadOnly(true);
+
+		String interpreterName = applicationContext.getEnvironment().getProperty("default.interpreter.name");
+		context = contextRepository.findByInterpreterName(interpreterName);
+		Session session = sessionCache.saveSession(new Session(SESSION_ID, context, new ArrayList<>()));
+		for (int i = 0; i < sessionLength; i++) {
+			sessionCache.appendCode(session, "a" + i + " = " + i);
+		}
+		List<Session> sessions = new ArrayList<>(otherSessions);
+		for (int i = 0; i < otherSessions; i++) {
+			sessions.add(new Session(SESSION_ID + 1 + i, context, null));
+		}
+		sessionRepository.save(sessions);
+	}
+
+	@TearDown
+	public void tearDown() {
+		applicationContext.close();
+	}
+
+	@Benchmark
+	public InterpreterContext findContext() {
+		return contextRepository.findByInterpreterName(context.getInterpreterName());
+	}
+
+	@Benchmark
+	public InterpreterContext findContextCached() {
+		return sessionCache.findContext(context.getInterpreterName());
+	}
+
+	@Benchmark
+	public Session findSession() {
+		return sessionRepository.findByIdAndInterpreterName(SESSION_ID, context.getInterpreterName());
+	}
+
+	@Benchmark
+	public List<String> loadSessionCells() {
+		return readOnlyTransaction.execute(status -> {
+			try (Stream<String> cells = sessionCellRepository.streamCodeBySessionId(SESSION_ID)) {
+				return cells.collect(Collectors.toList());
+			}
+		});
+	}
+
+	@Benchmark
+	public Session findSessionCached() {
+		return sessionCache.findSession(context, SESSION_ID);
+	}
+}
@@ -0,0 +1,83 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.RequestCodeParser;
+
+/**
+ * Compares request code validation and tokenizing : regex compiled on each
+ * request then split (previous implementation), against the precompiled parser.
+ * Also measures building the parsed request from user input
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+
+	private static final String REQUEST_PATTERN = "%[a-z]{3,}[ ]//S.+";
+
+	@Param({ "%python print (1+1)", "%python a = [x * x for x in range(100) if x % 2 == 0]; print(sum(a))",
+			"%python123 print 1+1" })
+	private String code;
+
+	private RequestCodeParser parser;
+	private UserRequestInput userRequestInput;
+
+	@Setup
+	public void setUp() {
+		parser = new RequestCodeParser(REQUEST_PATTERN);
+		userRequestInput = new UserRequestInput(code, "159");
+	}
+
+	@Benchmark
+	public void regexPerRequest(Blackhole blackhole) {
+		String pattern = REQUEST_PATTERN.replaceAll("//", "\\\\");
+		if (code.matches(pattern)) {
+			String[] requestTokens = code.split(" ", 2);
+			blackhole.consume(requestTokens[0].replace("%", "").trim());
+			blackhole.consume(requestTokens[1].trim());
+		}
+	}
+
+	@Benchmark
+	public void precompiledParser(Blackhole blackhole) {
+		int separator = parser.parse(code);
+		if (separator >= 0) {
+			blackhole.consume(parser.interpreterName(code, separator));
+			blackhole.consume(parser.code(code, separator));
+		}
+	}
+
+	@Benchmark
+	public InterpretationRequest interpretationRequestFromInput() {
+		return new InterpretationRequest(userRequestInput);
+	}
+
+	@Benchmark
+	public InterpretationRequest interpretationRequestFromParsedCode() {
+		int separator = parser.parse(code);
+		return separator >= 0 ? new InterpretationRequest(userRequestInput, parser.interpreterName(code, separator),
+				parser.code(code, separator)) : null;
+	}
+}
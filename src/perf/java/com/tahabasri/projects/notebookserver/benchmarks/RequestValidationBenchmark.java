@@ -0,0 +1,131 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.cache.CacheStatistics;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.services.ExecutionMetrics;
+import com.tahabasri.projects.notebookserver.services.InterpreterServiceImpl;
+import com.tahabasri.projects.notebookserver.services.SessionCache;
+import com.tahabasri.projects.notebookserver.services.SessionEvictionImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Measures request validation and parsing as done by the interpreter service
+ * (code validation, tokenizing, context and session lookup), with an in-memory
+ * sessions cache so only the service own work is measured
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestValidationBenchmark {
+
+	@Param({ "%python print (1+1)", "%python123 print 1+1" })
+	private String code;
+
+	@Param({ "", "159" })
+	private String sessionId;
+
+	private InterpreterServiceImpl interpreterService;
+	private UserRequestInput userRequestInput;
+
+	@Setup
+	public void setUp() {
+		InterpreterContext context = new InterpreterContext("python", "python", null);
+		Session session = new Session(159L, context, new ArrayList<>());
+
+		ExecutionMetrics executionMetrics = new ExecutionMetrics();
+		ReflectionTestUtils.setField(executionMetrics, "meterRegistry", new SimpleMeterRegistry());
+
+		interpreterService = new InterpreterServiceImpl();
+		ReflectionTestUtils.setField(interpreterService, "codeRequestPattern", "%[a-z]{3,}[ ]//S.+");
+		ReflectionTestUtils.setField(interpreterService, "sessionCache", new InMemorySessionCache(context, session));
+		ReflectionTestUtils.setField(interpreterService, "executionMetrics", executionMetrics);
+		// only records sessions accesses, its reaper is not started
+		ReflectionTestUtils.setField(interpreterService, "sessionEviction", new SessionEvictionImpl());
+		interpreterService.initializeParser();
+
+		userRequestInput = new UserRequestInput(code, sessionId.isEmpty() ? null : sessionId);
+	}
+
+	@Benchmark
+	public InterpretationRequest validateAndParse() {
+		return interpreterService.validateAndParseInterpretationRequest(userRequestInput);
+	}
+
+	/**
+	 * Sessions cache holding one context and one session
+	 */
+	private static class InMemorySessionCache implements SessionCache {
+		private final InterpreterContext context;
+		private final Session session;
+
+		private InMemorySessionCache(InterpreterContext context, Session session) {
+			this.context = context;
+			this.session = session;
+		}
+
+		@Override
+		public InterpreterContext findContext(String interpreterName) {
+			return context.getInterpreterName().equals(interpreterName) ? context : null;
+		}
+
+		@Override
+		public Session findSession(InterpreterContext context, Long sessionId) {
+			return session.getId().equals(sessionId) ? session : null;
+		}
+
+		@Override
+		public boolean hasSession(InterpreterContext context, Long sessionId) {
+			return session.getId().equals(sessionId);
+		}
+
+		@Override
+		public Session saveSession(Session session) {
+			return session;
+		}
+
+		@Override
+		public void invalidateSession(InterpreterContext context, Long sessionId) {
+		}
+
+		@Override
+		public void appendCode(Session session, String code) {
+			session.getCodeLines().add(code);
+		}
+
+		@Override
+		public CacheStatistics getContextStatistics() {
+			return new CacheStatistics(0, 0, 0, 1);
+		}
+
+		@Override
+		public CacheStatistics getSessionStatistics() {
+			return new CacheStatistics(0, 0, 0, 1);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.tahabasri.projects.notebookserver.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.services.interpreter.ExecutionContext;
+import com.tahabasri.projects.notebookserver.services.interpreter.PythonInterpreter;
+
+/**
+ * Measures sending the code to python in process mode : all session code lines
+ * read as the program given to the process standard input, at various session
+ * lengths. The program builder is private, it is called by reflection, which
+ * adds the same small cost to all session lengths
+ *
+ * @author Taha BASRI
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionCodeBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	private int sessionLength;
+
+	private PythonInterpreter interpreter;
+	private ExecutionContext executionContext;
+	private InterpretationRequest interpretationRequest;
+	private Method getCodeInput;
+	private final byte[] buffer = new byte[8192];
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		// interpreters check that their executable exists, no process is launched here
+		String executable = new File(System.getProperty("java.home"), "bin/java").getPath();
+		InterpreterContext context = new InterpreterContext("python", executable, null);
+		List<String> codeLines = new ArrayList<>();
+		for (int i = 0; i < sessionLength; i++) {
+			codeLines.add("a" + i + " = \"value " + i + "\"");
+		}
+		Session session = new Session(159L, context, codeLines);
+
+		interpreter = new PythonInterpreter(context);
+		executionContext = new ExecutionContext(context, new Properties(), session);
+		interpretationRequest = new InterpretationRequest(new UserRequestInput("%python print(a0)", "159"));
+
+		getCodeInput = PythonInterpreter.class.getDeclaredMethod("getCodeInput", ExecutionContext.class,
+				InterpretationRequest.class);
+		getCodeInput.setAccessible(true);
+	}
+
+	/**
+	 * @return program bytes count, read as the process input pump would
+	 */
+	@Benchmark
+	public long fullSessionCode() throws ReflectiveOperationException, IOException {
+		long size = 0;
+		try (InputStream program = (InputStream) getCodeInput.invoke(interpreter, executionContext,
+				interpretationRequest)) {
+			int read;
+			while ((read = program.read(buffer)) >= 0) {
+				size += read;
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,274 @@
+package com.tahabasri.projects.notebookserver.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Drives the 'execute' end point of a running server with a fixed number of
+ * concurrent clients, then reports throughput and latency percentiles.
+ *
+ * Settings are read from system properties :
+ * <ul>
+ * <li>load.url : end point URL (http://localhost:8080/api/v1/execute)</li>
+ * <li>load.concurrency : concurrent clients (16)</li>
+ * <li>load.requests : measured requests (10000)</li>
+ * <li>load.warmup : requests sent before measuring (1000)</li>
+ * <li>load.interpreter : interpreter name (stub)</li>
+ * <li>load.sessions : distinct sessions used by session requests (100)</li>
+ * <li>load.session-ratio : part of requests sent with a session, from 0 to 1
+ * (0.5)</li>
+ * <li>load.code : code of requests without session (print(1))</li>
+ * <li>load.session-code : code of session requests (x = 1)</li>
+ * </ul>
+ * Session requests of a same session are executed one after the other by the
+ * server, so fewer sessions means more waiting
+ *
+ * @author Taha BASRI
+ *
+ */
+public class LoadTestDriver {
+
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final URL url;
+	private final int concurrency;
+	private final int sessions;
+	private final double sessionRatio;
+	private final byte[] statelessBody;
+	private final byte[] sessionBody;
+
+	/**
+	 * Sessions identifiers are offset by the run start time so each run starts
+	 * with new sessions
+	 */
+	private final long sessionOffset = System.currentTimeMillis() % 1_000_000 * 1000;
+
+	private final LongAdder failedRequests = new LongAdder();
+	private final LongAdder errorResults = new LongAdder();
+
+	public LoadTestDriver(URL url, int concurrency, String interpreter, int sessions, double sessionRatio,
+			String code, String sessionCode) {
+		this.url = url;
+		this.concurrency = concurrency;
+		this.sessions = Math.max(1, sessions);
+		this.sessionRatio = sessionRatio;
+		this.statelessBody = body(interpreter, code);
+		this.sessionBody = body(interpreter, sessionCode);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int concurrency = Integer.getInteger("load.concurrency", 16);
+		// idle keep-alive connections kept by the JDK, 5 by default
+		System.setProperty("http.maxConnections", String.valueOf(concurrency));
+
+		LoadTestDriver driver = new LoadTestDriver(
+				new URL(System.getProperty("load.url", "http://localhost:8080/api/v1/execute")), concurrency,
+				System.getProperty("load.interpreter", "stub"), Integer.getInteger("load.sessions", 100),
+				Double.parseDouble(System.getProperty("load.session-ratio", "0.5")),
+				System.getProperty("load.code", "print(1)"), System.getProperty("load.session-code", "x = 1"));
+
+		int warmup = Integer.getInteger("load.warmup", 1000);
+		if (warmup > 0) {
+			System.out.println("Warming up with " + warmup + " requests ...");
+			driver.run(warmup);
+		}
+		int requests = Integer.getInteger("load.requests", 10000);
+		System.out.println("Sending " + requests + " requests with " + concurrency + " clients ...");
+		driver.run(requests).print(System.out);
+	}
+
+	/**
+	 * sends requests and waits for all of them to complete
+	 *
+	 * @param requests requests count, shared by all clients
+	 * @return run report
+	 * @throws InterruptedException when interrupted while waiting for clients
+	 */
+	public Report run(int requests) throws InterruptedException {
+		failedRequests.reset();
+		errorResults.reset();
+		AtomicLong remaining = new AtomicLong(requests);
+
+		ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Callable<long[]>> tasks = IntStream.range(0, concurrency)
+					.mapToObj(i -> (Callable<long[]>) () -> client(remaining)).collect(Collectors.toList());
+			long start = System.nanoTime();
+			List<Future<long[]>> results = clients.invokeAll(tasks);
+			long elapsed = System.nanoTime() - start;
+
+			long[] latencies = new long[0];
+			for (Future<long[]> result : results) {
+				long[] clientLatencies = result.get();
+				int offset = latencies.length;
+				latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+				System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+			}
+			Arrays.sort(latencies);
+			return new Report(latencies, elapsed, failedRequests.sum(), errorResults.sum());
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Load test client failed", e.getCause());
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	/**
+	 * sends requests one after the other until no request remains
+	 *
+	 * @return latency of each request, in nanoseconds
+	 */
+	private long[] client(AtomicLong remaining) {
+		long[] latencies = new long[1024];
+		int count = 0;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (remaining.getAndDecrement() > 0) {
+			boolean withSession = random.nextDouble() < sessionRatio;
+			String sessionId = withSession ? String.valueOf(sessionOffset + random.nextInt(sessions)) : null;
+
+			long start = System.nanoTime();
+			send(withSession ? sessionBody : statelessBody, sessionId);
+			long latency = System.nanoTime() - start;
+
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = latency;
+		}
+		return Arrays.copyOf(latencies, count);
+	}
+
+	/**
+	 * sends one request and reads its whole response, so the connection is reused.
+	 * The body is not streamed but buffered and written with the headers, so the
+	 * request does not wait for the server delayed acknowledgment (about 40ms)
+	 * between headers and body
+	 */
+	private void send(byte[] body, String sessionId) {
+		HttpURLConnection connection = null;
+		try {
+			URL target = sessionId != null ? new URL(url + "?sessionId=" + sessionId) : url;
+			connection = (HttpURLConnection) target.openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream output = connection.getOutputStream()) {
+				output.write(body);
+			}
+
+			int status = connection.getResponseCode();
+			InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			String response = input != null ? read(input) : "";
+			if (status != HttpURLConnection.HTTP_OK) {
+				failedRequests.increment();
+			} else if (response.contains("\"resultType\":\"error\"")) {
+				errorResults.increment();
+			}
+		} catch (IOException e) {
+			failedRequests.increment();
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	private static String read(InputStream input) throws IOException {
+		try (InputStream in = input) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static byte[] body(String interpreter, String code) {
+		String request = "%" + interpreter + " " + code;
+		StringBuilder json = new StringBuilder("{\"code\":\"");
+		for (char c : request.toCharArray()) {
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			default:
+				json.append(c);
+			}
+		}
+		return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Results of one run
+	 */
+	public static class Report {
+		private final long[] latencies;
+		private final long elapsedNanos;
+		private final long failedRequests;
+		private final long errorResults;
+
+		private Report(long[] latencies, long elapsedNanos, long failedRequests, long errorResults) {
+			this.latencies = latencies;
+			this.elapsedNanos = elapsedNanos;
+			this.failedRequests = failedRequests;
+			this.errorResults = errorResults;
+		}
+
+		/**
+		 * @return requests completed per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos > 0 ? latencies.length * 1e9 / elapsedNanos : 0;
+		}
+
+		/**
+		 * @param percentile percentile from 0 to 1
+		 * @return latency in milliseconds below which the given part of requests
+		 *         completed
+		 */
+		public double getLatency(double percentile) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+		}
+
+		public void print(PrintStream out) {
+			out.printf("requests    : %d (%d failed, %d error results)%n", latencies.length, failedRequests,
+					errorResults);
+			out.printf("duration    : %.2f s%n", elapsedNanos / 1e9);
+			out.printf("throughput  : %.1f requests/s%n", getThroughput());
+			for (double percentile : PERCENTILES) {
+				out.printf("p%-10s : %.3f ms%n", String.valueOf(percentile * 100).replaceAll("\\.0$", ""),
+						getLatency(percentile));
+			}
+			out.printf("max         : %.3f ms%n", getLatency(1));
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.tahabasri.projects.notebookserver.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() {
+		LruCache<String, String> cache = new LruCache<>(1, 0);
+		cache.put("a", "1");
+		cache.put("b", "2");
+
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isEqualTo("2");
+		assertThat(cache.getStatistics().getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testExpiredEntryIsNotReturned() throws InterruptedException {
+		LruCache<String, String> cache = new LruCache<>(10, 5);
+		cache.put("a", "1");
+		Thread.sleep(20);
+
+		assertThat(cache.get("a")).isNull();
+	}
+
+	@Test
+	public void testExpireAfterWriteIgnoresAccesses() throws InterruptedException {
+		LruCache<String, String> cache = new LruCache<>(10, 50, true);
+		cache.put("a", "1");
+		for (int i = 0; i < 10; i++) {
+			cache.get("a");
+			Thread.sleep(10);
+		}
+
+		assertThat(cache.get("a")).isNull();
+	}
+
+	@Test
+	public void testLoaderIsCalledOnMissOnly() {
+		LruCache<String, String> cache = new LruCache<>(10, 0);
+
+		assertThat(cache.get("a", key -> "loaded")).isEqualTo("loaded");
+		assertThat(cache.get("a", key -> "reloaded")).isEqualTo("loaded");
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertThat(statistics.getHitCount()).isEqualTo(1);
+		assertThat(statistics.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testValueLoadedDuringInvalidationIsNotCached() {
+		LruCache<String, String> cache = new LruCache<>(10, 0);
+
+		assertThat(cache.get("a", key -> {
+			cache.invalidate("a");
+			return "deleted";
+		})).isEqualTo("deleted");
+		assertThat(cache.get("a")).isNull();
+	}
+
+}
@@ -1,14 +1,17 @@
 package com.tahabasri.projects.notebookserver.controllers;
 
+import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultMatcher;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
@@ -47,4 +50,49 @@ public class ExecutorControllerTest {
                     .andDo(MockMvcResultHandlers.print());
     }
 
+    @Test
+    public void testAsyncControllerWithWrongSyntax () throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders
+                .post(ExecutorController.BASE_URL + ExecutorController.ASYNC_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"code\":\"python print(1)\"}");
+
+        MvcResult result = this.mockMvc.perform(builder)
+                                       .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                                       .andReturn();
+
+        this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.resultType").value("error"))
+                    .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void testStreamControllerWithWrongSyntax () throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders
+                .post(ExecutorController.BASE_URL + ExecutorController.STREAM_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"code\":\"python print(1)\"}");
+
+        this.mockMvc.perform(builder)
+                    .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                    .andExpect(MockMvcResultMatchers.content().string(Matchers.containsString("event:" + ExecutorController.RESULT_EVENT)))
+                    .andExpect(MockMvcResultMatchers.content().string(Matchers.containsString("\"resultType\":\"error\"")))
+                    .andDo(MockMvcResultHandlers.print());
+    }
+
+    @Test
+    public void testBatchControllerWithWrongSyntax () throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders
+                .post(ExecutorController.BASE_URL + ExecutorController.BATCH_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cells\":[\"%python a = 1\",\"python print(a)\"]}");
+
+        this.mockMvc.perform(builder)
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.resultType").value("error"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.results").isEmpty())
+                    .andDo(MockMvcResultHandlers.print());
+    }
+
 }
@@ -2,12 +2,15 @@ package com.tahabasri.projects.notebookserver.repositories;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -20,6 +23,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.models.entities.SessionCell;
 
 @RunWith(SpringRunner.class)
 @TestPropertySource(locations="classpath:application.properties")
@@ -35,6 +39,9 @@ public class InterpreterContextRepositoryTest {
 	@Autowired
 	private SessionRepository sessionRepository;
 
+	@Autowired
+	private SessionCellRepository sessionCellRepository;
+
 	private InterpreterContext context;
 
 	private final String interpreterName = "python";
@@ -53,6 +60,9 @@ public class InterpreterContextRepositoryTest {
 		context = entityManager.merge(context);
 
 		sessionId = (Long) entityManager.getId(session);
+		session = entityManager.find(Session.class, sessionId);
+		entityManager.persist(new SessionCell(session, 0, "import math"));
+		entityManager.persist(new SessionCell(session, 1, "print 1+1"));
 		entityManager.flush();
 	}
 
@@ -76,6 +86,19 @@ public class InterpreterContextRepositoryTest {
 		}
 	}
 
+	@Test
+	public void testGettingSessionByIdAndInterpreter() {
+		entityManager.persistAndFlush(new Session(157L, context, null));
+		entityManager.clear();
+
+		Session session = sessionRepository.findByIdAndInterpreterName(157L, interpreterName);
+
+		assertNotNull(session);
+		assertThat(session.getContext().getInterpreterName()).isEqualTo(interpreterName);
+		assertNull(sessionRepository.findByIdAndInterpreterName(157L, "ruby"));
+		assertNull(sessionRepository.findByIdAndInterpreterName(158L, interpreterName));
+	}
+
 	@Test
 	public void testAddNewSession() {
 		InterpreterContext searchedForContext = contextRepository.findByInterpreterName(interpreterName);
@@ -105,14 +128,12 @@ public class InterpreterContextRepositoryTest {
 			Session session = sessions.stream().filter(s -> sessionId.equals(s.getId())).findAny().orElse(null);
 
 			if (session != null) {
-				List<String> codeLines = session.getCodeLines();
+				List<String> codeLines = readCodeLines(session.getId());
 
 				if (codeLines != null && !codeLines.isEmpty()) {
-					session.setCodeLines(new ArrayList<>());
-
-					session = sessionRepository.saveAndFlush(session);
+					sessionCellRepository.deleteBySessionId(session.getId());
 
-					assertThat(session.getCodeLines()).isEmpty();
+					assertThat(readCodeLines(session.getId())).isEmpty();
 				} else {
 					fail("No lines found");
 				}
@@ -123,4 +144,18 @@ public class InterpreterContextRepositoryTest {
 			fail("Context not found");
 		}
 	}
+
+	@Test
+	public void testAppendSessionCell() {
+		Session session = entityManager.find(Session.class, sessionId);
+		sessionCellRepository.saveAndFlush(new SessionCell(session, 2, "a = 1"));
+
+		assertThat(readCodeLines(sessionId)).containsExactly("import math", "print 1+1", "a = 1");
+	}
+
+	private List<String> readCodeLines(Long sessionId) {
+		try (Stream<String> cells = sessionCellRepository.streamCodeBySessionId(sessionId)) {
+			return cells.collect(Collectors.toList());
+		}
+	}
 }
@@ -0,0 +1,138 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.services.ExecutionAdmissionImpl;
+import com.tahabasri.projects.notebookserver.services.ExecutionMetrics;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ExecutionAdmissionTest {
+
+	private ExecutionAdmissionImpl executionAdmission;
+	private MeterRegistry meterRegistry;
+
+	@Before
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		ExecutionMetrics executionMetrics = new ExecutionMetrics();
+		ReflectionTestUtils.setField(executionMetrics, "meterRegistry", meterRegistry);
+
+		Properties properties = new Properties();
+		properties.setProperty("interpreter.python.max-concurrent", "1");
+		InterpreterLookup interpreterLookup = Mockito.mock(InterpreterLookup.class);
+		Mockito.when(interpreterLookup.readPropertiesForInterpreter("python")).thenReturn(properties);
+		Mockito.when(interpreterLookup.readPropertiesForInterpreter("stub")).thenReturn(new Properties());
+		Properties aliasProperties = new Properties();
+		aliasProperties.setProperty("interpreter.alias.maxConcurrent", "1");
+		Mockito.when(interpreterLookup.readPropertiesForInterpreter("alias")).thenReturn(aliasProperties);
+
+		executionAdmission = new ExecutionAdmissionImpl();
+		ReflectionTestUtils.setField(executionAdmission, "interpreterLookup", interpreterLookup);
+		ReflectionTestUtils.setField(executionAdmission, "executionMetrics", executionMetrics);
+		ReflectionTestUtils.setField(executionAdmission, "maxConcurrent", 2);
+		ReflectionTestUtils.setField(executionAdmission, "timeout", 100L);
+		executionAdmission.initializeSlots();
+	}
+
+	@Test
+	public void testExecutionAboveInterpreterLimitIsRejected() {
+		executionAdmission.acquire("python", null);
+
+		try {
+			executionAdmission.acquire("python", null);
+			throw new AssertionError("Execution above interpreter limit was admitted");
+		} catch (RejectedExecutionException e) {
+			assertThat(e.getMessage()).contains("python");
+		}
+		assertThat(Counter.builder("notebook.admission.rejections").tags(ExecutionMetrics.TAG_INTERPRETER, "python")
+				.register(meterRegistry).count()).isEqualTo(1.0);
+
+		// the rejected execution gave its global slot back
+		executionAdmission.acquire("stub", null);
+		executionAdmission.release("python");
+		executionAdmission.acquire("python", null);
+	}
+
+	@Test
+	public void testWaitingExecutionIsAdmittedWhenSlotIsReleased() throws Exception {
+		ReflectionTestUtils.setField(executionAdmission, "timeout", 10000L);
+		executionAdmission.acquire("python", null);
+
+		CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> executionAdmission.acquire("python", null));
+		Gauge queued = meterRegistry.find("notebook.admission.queued").tags(ExecutionMetrics.TAG_INTERPRETER, "python")
+				.gauge();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (queued.value() < 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertThat(queued.value()).isEqualTo(1.0);
+		assertThat(waiting.isDone()).isFalse();
+
+		executionAdmission.release("python");
+		waiting.get(5, TimeUnit.SECONDS);
+
+		assertThat(queued.value()).isZero();
+		assertThat(meterRegistry.find("notebook.admission.running").tags(ExecutionMetrics.TAG_INTERPRETER, "python")
+				.gauge().value()).isEqualTo(1.0);
+	}
+
+	@Test
+	public void testMaxConcurrentAliasIsRead() {
+		executionAdmission.acquire("alias", null);
+
+		try {
+			executionAdmission.acquire("alias", null);
+			throw new AssertionError("Execution above interpreter limit was admitted");
+		} catch (RejectedExecutionException e) {
+			assertThat(e.getMessage()).contains("alias");
+		}
+	}
+
+	@Test
+	public void testSessionsTakeTurnsForFreedSlots() throws Exception {
+		ReflectionTestUtils.setField(executionAdmission, "timeout", 10000L);
+		executionAdmission.acquire("python", "1");
+
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		for (String sessionId : new String[] { "1", "1", "2" }) {
+			Thread waiting = new Thread(() -> {
+				executionAdmission.acquire("python", sessionId);
+				admitted.add(sessionId);
+			});
+			waiting.start();
+			// the execution is queued once it waits for its turn
+			long deadline = System.currentTimeMillis() + 5000;
+			while (waiting.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+		}
+
+		for (int i = 1; i <= 3; i++) {
+			executionAdmission.release("python");
+			long deadline = System.currentTimeMillis() + 5000;
+			while (admitted.size() < i && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+		}
+		// session 2 is admitted before the second execution of session 1
+		assertThat(admitted).containsExactly("1", "2", "1");
+	}
+}
@@ -0,0 +1,70 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.services.ExecutionMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ExecutionMetricsTest {
+
+	private ExecutionMetrics executionMetrics;
+	private MeterRegistry meterRegistry;
+
+	@Before
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		executionMetrics = new ExecutionMetrics();
+		ReflectionTestUtils.setField(executionMetrics, "meterRegistry", meterRegistry);
+	}
+
+	private Timer executionTimer(String resultType) {
+		return Timer.builder("notebook.execution").tags(ExecutionMetrics.TAG_INTERPRETER, "python",
+				ExecutionMetrics.TAG_RESULT, resultType).register(meterRegistry);
+	}
+
+	@Test
+	public void testExecutionIsTaggedByResultType() {
+		executionMetrics.recordExecution("python", new ExecutionResult(ExecutionResult.RESULT_OK, "2"), 1000);
+		executionMetrics.recordExecution("python", new ExecutionResult(ExecutionResult.RESULT_OK, "2"), 1000);
+		executionMetrics.recordExecution("python", new ExecutionResult(ExecutionResult.RESULT_ERROR, ""), 1000);
+
+		assertThat(executionTimer(ExecutionResult.RESULT_OK).count()).isEqualTo(2);
+		assertThat(executionTimer(ExecutionResult.RESULT_ERROR).count()).isEqualTo(1);
+	}
+
+	@Test
+	public void testBatchIsRecordedAsOneExecution() {
+		// an earlier failed cell fails the batch, even when the last cell succeeded
+		executionMetrics.recordBatchExecution("python", Arrays.asList(new ExecutionResult(ExecutionResult.RESULT_OK, ""),
+				new ExecutionResult(ExecutionResult.RESULT_ERROR, ""), new ExecutionResult(ExecutionResult.RESULT_OK, "")),
+				3000);
+		executionMetrics.recordBatchExecution("python", Arrays.asList(new ExecutionResult(ExecutionResult.RESULT_OK, ""),
+				new ExecutionResult(ExecutionResult.RESULT_OK, "")), 2000);
+
+		assertThat(executionTimer(ExecutionResult.RESULT_OK).count()).isEqualTo(1);
+		assertThat(executionTimer(ExecutionResult.RESULT_ERROR).count()).isEqualTo(1);
+	}
+
+	@Test
+	public void testInterpreterMeasuresAreTaggedByInterpreter() {
+		executionMetrics.forInterpreter("python").watchdogKilled();
+		executionMetrics.recordValidation(null, 1000);
+
+		assertThat(Counter.builder("notebook.watchdog.kills").tags(ExecutionMetrics.TAG_INTERPRETER, "python")
+				.register(meterRegistry).count()).isEqualTo(1.0);
+		assertThat(Timer.builder("notebook.request.validation")
+				.tags(ExecutionMetrics.TAG_INTERPRETER, ExecutionMetrics.UNKNOWN_INTERPRETER).register(meterRegistry)
+				.count()).isEqualTo(1);
+	}
+}
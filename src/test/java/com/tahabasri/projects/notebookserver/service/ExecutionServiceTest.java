@@ -0,0 +1,151 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.tahabasri.projects.notebookserver.config.ExecutionPoolConfiguration;
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.ExecutionAdmission;
+import com.tahabasri.projects.notebookserver.services.ExecutionService;
+import com.tahabasri.projects.notebookserver.services.ExecutionServiceImpl;
+import com.tahabasri.projects.notebookserver.services.InterpreterService;
+import com.tahabasri.projects.notebookserver.services.ResultCache;
+import com.tahabasri.projects.notebookserver.services.ResultCacheImpl;
+
+@RunWith(SpringRunner.class)
+@TestPropertySource(locations = "classpath:application.properties", properties = "execution.session.queue-capacity=100")
+public class ExecutionServiceTest {
+
+	@TestConfiguration
+	static class ExecutionServiceTestConfiguration {
+
+		@Bean
+		public ExecutionService executionService() {
+			return new ExecutionServiceImpl();
+		}
+
+		@Bean
+		public ResultCache resultCache() {
+			return new ResultCacheImpl();
+		}
+
+		@Bean(name = ExecutionPoolConfiguration.EXECUTION_TASK_EXECUTOR)
+		public ThreadPoolTaskExecutor executionTaskExecutor() {
+			ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+			executor.setCorePoolSize(4);
+			executor.setMaxPoolSize(4);
+			executor.setQueueCapacity(1000);
+			return executor;
+		}
+	}
+
+	@Autowired
+	private ExecutionService executionService;
+
+	@MockBean
+	private InterpreterService interpreterService;
+
+	@MockBean
+	private ExecutionAdmission executionAdmission;
+
+	private final List<String> executedCode = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger runningRequests = new AtomicInteger();
+	private final AtomicInteger overlappingRequests = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		Mockito.when(interpreterService.interpretRequest(Matchers.any(InterpretationRequest.class)))
+				.thenAnswer(invocation -> {
+					InterpretationRequest request = (InterpretationRequest) invocation.getArguments()[0];
+					if (runningRequests.incrementAndGet() > 1) {
+						overlappingRequests.incrementAndGet();
+					}
+					Thread.sleep(1);
+					executedCode.add(request.getCode());
+					runningRequests.decrementAndGet();
+					return new ExecutionResult(ExecutionResult.RESULT_OK, request.getCode());
+				});
+		Mockito.when(interpreterService.interpretBatch(Matchers.anyListOf(InterpretationRequest.class),
+				Matchers.anyBoolean())).thenAnswer(invocation -> {
+					@SuppressWarnings("unchecked")
+					List<InterpretationRequest> requests = (List<InterpretationRequest>) invocation.getArguments()[0];
+					if (runningRequests.incrementAndGet() > 1) {
+						overlappingRequests.incrementAndGet();
+					}
+					List<ExecutionResult> results = new ArrayList<>();
+					for (InterpretationRequest request : requests) {
+						executedCode.add(request.getCode());
+						results.add(new ExecutionResult(ExecutionResult.RESULT_OK, request.getCode()));
+					}
+					runningRequests.decrementAndGet();
+					return results;
+				});
+	}
+
+	@Test
+	public void testSessionRequestsRunInOrder() {
+		List<CompletableFuture<ExecutionResult>> results = new ArrayList<>();
+		List<String> submittedCode = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			submittedCode.add("a = " + i);
+			InterpretationRequest request = new InterpretationRequest(new UserRequestInput("%python a = " + i, "159"));
+			results.add(executionService.submit(request));
+		}
+		results.forEach(CompletableFuture::join);
+
+		assertThat(overlappingRequests.get()).isZero();
+		assertThat(executedCode).containsExactlyElementsOf(submittedCode);
+	}
+
+	@Test
+	public void testBatchRunsInOrderWithSessionRequests() {
+		InterpretationRequest before = new InterpretationRequest(new UserRequestInput("%python a = 1", "159"));
+		List<InterpretationRequest> batch = Arrays.asList(
+				new InterpretationRequest(new UserRequestInput("%python b = a", "159")),
+				new InterpretationRequest(new UserRequestInput("%python c = b", "159")));
+		InterpretationRequest after = new InterpretationRequest(new UserRequestInput("%python d = c", "159"));
+
+		CompletableFuture<ExecutionResult> first = executionService.submit(before);
+		CompletableFuture<List<ExecutionResult>> results = executionService.submitBatch(batch, true);
+		CompletableFuture<ExecutionResult> last = executionService.submit(after);
+		CompletableFuture.allOf(first, results, last).join();
+
+		assertThat(results.join()).hasSize(2);
+		assertThat(overlappingRequests.get()).isZero();
+		assertThat(executedCode).containsExactly("a = 1", "b = a", "c = b", "d = c");
+	}
+
+	@Test
+	public void testStatelessRequestRunsOnCallingThread() {
+		Mockito.doAnswer(invocation -> new ExecutionResult(ExecutionResult.RESULT_OK, Thread.currentThread().getName()))
+				.when(interpreterService).interpretRequest(Matchers.any(InterpretationRequest.class));
+
+		CompletableFuture<ExecutionResult> result = executionService
+				.execute(new InterpretationRequest(new UserRequestInput("%python print(1)", null)));
+
+		assertThat(result.isDone()).isTrue();
+		assertThat(result.join().getResultContent()).isEqualTo(Thread.currentThread().getName());
+	}
+
+}
@@ -4,13 +4,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -20,6 +23,7 @@ import org.springframework.core.env.Environment;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.tahabasri.projects.notebookserver.models.ExecutionResult;
 import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
@@ -27,13 +31,24 @@ import com.tahabasri.projects.notebookserver.models.UserRequestInput;
 import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 import com.tahabasri.projects.notebookserver.models.entities.Session;
 import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
 import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+import com.tahabasri.projects.notebookserver.services.ExecutionMetrics;
 import com.tahabasri.projects.notebookserver.services.InterpreterService;
 import com.tahabasri.projects.notebookserver.services.InterpreterServiceImpl;
+import com.tahabasri.projects.notebookserver.services.SessionCache;
+import com.tahabasri.projects.notebookserver.services.SessionCacheImpl;
+import com.tahabasri.projects.notebookserver.services.SessionCellWriter;
+import com.tahabasri.projects.notebookserver.services.SessionEviction;
+import com.tahabasri.projects.notebookserver.services.interpreter.ExecutionContext;
 import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterDescriptor;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
 import com.tahabasri.projects.notebookserver.services.interpreter.PythonInterpreter;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @RunWith(SpringRunner.class)
 @TestPropertySource(locations = "classpath:application.properties")
 public class InterpreterServiceTest {
@@ -45,6 +60,21 @@ public class InterpreterServiceTest {
 		public InterpreterService interpreterService() {
 			return new InterpreterServiceImpl();
 		}
+
+		@Bean
+		public SessionCache sessionCache() {
+			return new SessionCacheImpl();
+		}
+
+		@Bean
+		public ExecutionMetrics executionMetrics() {
+			return new ExecutionMetrics();
+		}
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
 	}
 
 	@Autowired
@@ -59,9 +89,21 @@ public class InterpreterServiceTest {
 	@MockBean
 	private SessionRepository sessionRepository;
 
+	@MockBean
+	private SessionCellRepository sessionCellRepository;
+
+	@MockBean
+	private SessionCellWriter sessionCellWriter;
+
 	@MockBean
 	private InterpreterLookup interpreterLookup;
 
+	@MockBean
+	private SessionEviction sessionEviction;
+
+	@MockBean
+	private PlatformTransactionManager transactionManager;
+
 	@Before
 	public void setUp() {
 		ReflectionTestUtils.setField(interpreterService, "codeRequestPattern", "%[a-z]{3,}[ ]//S.+");
@@ -76,9 +118,14 @@ public class InterpreterServiceTest {
 		context.setSessions(sessions);
 
 		Mockito.when(contextRepository.findByInterpreterName("python")).thenReturn(context);
+		Mockito.when(sessionRepository.findByIdAndInterpreterName(159753L, "python")).thenReturn(session);
+		Mockito.when(sessionCellRepository.streamCodeBySessionId(159753L))
+				.thenAnswer(invocation -> Stream.of("import math", "print 1+1"));
 
 		Interpreter pythonInterpreter = new PythonInterpreter(context);
 		Mockito.when(interpreterLookup.getInterpreter(context)).thenReturn(pythonInterpreter);
+		Mockito.when(interpreterLookup.getDescriptor(context))
+				.thenReturn(new InterpreterDescriptor(context, null, null));
 	}
 
 	@Test
@@ -137,4 +184,35 @@ public class InterpreterServiceTest {
 		assertThat(result.getResultType()).isEqualToIgnoringCase(ExecutionResult.RESULT_OK);
 	}
 
+	@Test
+	public void testInterpretBatchStopsOnError() {
+		List<InterpretationRequest> requests = new ArrayList<>();
+		for (String code : Arrays.asList("%python print (1+1)", "%python print (undefined_name)", "%python print (2)")) {
+			InterpretationRequest request = interpreterService
+					.validateAndParseInterpretationRequest(new UserRequestInput(code, null));
+			request.setStatus(InterpretationRequest.INTERPRETATION_REQUEST_NO_NEED_FOR_SESSION);
+			requests.add(request);
+		}
+
+		List<ExecutionResult> results = interpreterService.interpretBatch(requests, true);
+
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getResultType()).isEqualTo(ExecutionResult.RESULT_OK);
+		assertThat(results.get(1).getResultType()).isEqualTo(ExecutionResult.RESULT_ERROR);
+	}
+
+	@Test
+	public void testWarmUpInterpreters() {
+		InterpreterContext context = new InterpreterContext("mocked", "mockedPath", null);
+		Interpreter interpreter = Mockito.mock(Interpreter.class);
+		Mockito.when(contextRepository.findAll()).thenReturn(Collections.singletonList(context));
+		Mockito.when(interpreterLookup.getInterpreter(context)).thenReturn(interpreter);
+		Mockito.when(interpreterLookup.getDescriptor(context))
+				.thenReturn(new InterpreterDescriptor(context, null, null));
+
+		((InterpreterServiceImpl) interpreterService).warmUpInterpreters();
+
+		Mockito.verify(interpreter).warmUp(Matchers.any(ExecutionContext.class));
+	}
+
 }
@@ -0,0 +1,42 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.tahabasri.projects.notebookserver.services.RequestCodeParser;
+
+public class RequestCodeParserTest {
+
+	private final RequestCodeParser defaultParser = new RequestCodeParser("%[a-z]{3,}[ ]//S.+");
+
+	@Test
+	public void testValidCodeIsTokenized() {
+		String code = "%python print (1+1) ";
+		int separator = defaultParser.parse(code);
+
+		assertThat(separator).isEqualTo(7);
+		assertThat(defaultParser.interpreterName(code, separator)).isEqualTo("python");
+		assertThat(defaultParser.code(code, separator)).isEqualTo("print (1+1)");
+	}
+
+	@Test
+	public void testWrongSyntaxIsRejected() {
+		assertThat(defaultParser.parse(null)).isNegative();
+		assertThat(defaultParser.parse("")).isNegative();
+		assertThat(defaultParser.parse("python print 1")).isNegative();
+		assertThat(defaultParser.parse("%py print 1")).isNegative();
+		assertThat(defaultParser.parse("%python123 print 1")).isNegative();
+		assertThat(defaultParser.parse("%python  print 1")).isNegative();
+		assertThat(defaultParser.parse("%python p")).isNegative();
+		assertThat(defaultParser.parse("%python a = 1\nprint a")).isNegative();
+	}
+
+	@Test
+	public void testCustomPatternIsMatchedAsRegex() {
+		RequestCodeParser parser = new RequestCodeParser("%[a-z]+[ ]//d.*");
+
+		assertThat(parser.parse("%calc 1+1")).isEqualTo(5);
+		assertThat(parser.parse("%calc x+1")).isNegative();
+	}
+}
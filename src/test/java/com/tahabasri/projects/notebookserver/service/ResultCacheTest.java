@@ -0,0 +1,108 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tahabasri.projects.notebookserver.cache.LruCache;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.services.ResultCacheImpl;
+
+public class ResultCacheTest {
+
+	private ResultCacheImpl resultCache;
+	private final AtomicInteger executions = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		resultCache = new ResultCacheImpl();
+		ReflectionTestUtils.setField(resultCache, "enabled", true);
+		ReflectionTestUtils.setField(resultCache, "maxSize", 10);
+		ReflectionTestUtils.setField(resultCache, "ttl", 60000L);
+		resultCache.initializeCache();
+	}
+
+	private CompletableFuture<ExecutionResult> submit(String code, CompletableFuture<ExecutionResult> execution) {
+		return resultCache.getOrExecute(new InterpretationRequest(new UserRequestInput(code, null)), () -> {
+			executions.incrementAndGet();
+			return execution;
+		});
+	}
+
+	@Test
+	public void testConcurrentIdenticalRequestsShareOneExecution() {
+		CompletableFuture<ExecutionResult> execution = new CompletableFuture<>();
+		List<CompletableFuture<ExecutionResult>> results = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			results.add(submit("%python print(1+1)", execution));
+		}
+		execution.complete(new ExecutionResult(ExecutionResult.RESULT_OK, "2"));
+
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(resultCache.getCoalescedCount()).isEqualTo(9);
+		for (CompletableFuture<ExecutionResult> result : results) {
+			assertThat(result.join().getResultContent()).isEqualTo("2");
+		}
+	}
+
+	@Test
+	public void testSuccessfulResultIsCachedForNormalizedCode() {
+		submit("%python print(1+1)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_OK, "2"))).join();
+		ExecutionResult cached = submit("%python print(1+1)   ", new CompletableFuture<>()).join();
+
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(cached.getResultContent()).isEqualTo("2");
+		assertThat(resultCache.getStatistics().getHitCount()).isEqualTo(1);
+		assertThat(resultCache.getStatistics().getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testResultCachedDuringLookupIsNotExecutedAgain() {
+		submit("%python print(1+1)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_OK, "2"))).join();
+		// the first lookup misses the result, as if the previous execution cached it right after
+		LruCache<String, ExecutionResult> results = Mockito
+				.spy((LruCache<String, ExecutionResult>) ReflectionTestUtils.getField(resultCache, "results"));
+		Mockito.doReturn(null).when(results).get(Matchers.anyString());
+		ReflectionTestUtils.setField(resultCache, "results", results);
+
+		ExecutionResult cached = submit("%python print(1+1)", new CompletableFuture<>()).join();
+
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(cached.getResultContent()).isEqualTo("2");
+	}
+
+	@Test
+	public void testErrorResultIsNotCached() {
+		submit("%python print(x)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_ERROR, "NameError"))).join();
+		submit("%python print(x)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_ERROR, "NameError"))).join();
+
+		assertThat(executions.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testDifferentInterpretersDoNotShareResults() {
+		submit("%python print(1)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_OK, "1"))).join();
+		submit("%pyspark print(1)", CompletableFuture.completedFuture(
+				new ExecutionResult(ExecutionResult.RESULT_OK, "1"))).join();
+
+		assertThat(executions.get()).isEqualTo(2);
+	}
+}
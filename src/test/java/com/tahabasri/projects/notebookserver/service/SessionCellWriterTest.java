@@ -0,0 +1,115 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.services.SessionCellWriter;
+
+public class SessionCellWriterTest {
+
+	private SessionCellWriter sessionCellWriter;
+	private JdbcTemplate jdbcTemplate;
+	private Session session;
+
+	@Before
+	public void setUp() {
+		jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+		sessionCellWriter = new SessionCellWriter();
+		ReflectionTestUtils.setField(sessionCellWriter, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(sessionCellWriter, "transactionManager",
+				Mockito.mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(sessionCellWriter, "mode", SessionCellWriter.MODE_WRITE_BEHIND);
+		ReflectionTestUtils.setField(sessionCellWriter, "flushInterval", 60000L);
+		ReflectionTestUtils.setField(sessionCellWriter, "flushSize", 10);
+		sessionCellWriter.startFlusher();
+
+		session = new Session();
+		session.setId(159L);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		sessionCellWriter.stopFlusher();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCellsAreFlushedByBatches() {
+		for (int i = 0; i < 25; i++) {
+			sessionCellWriter.append(session, i, "a = " + i);
+		}
+		sessionCellWriter.flush();
+
+		// a full batch may already have been flushed in background
+		ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass((Class) List.class);
+		Mockito.verify(jdbcTemplate, Mockito.atLeast(3)).batchUpdate(Matchers.anyString(), batches.capture());
+		int flushedCells = 0;
+		for (List<Object[]> batch : batches.getAllValues()) {
+			assertThat(batch.size()).isLessThanOrEqualTo(10);
+			flushedCells += batch.size();
+		}
+		assertThat(flushedCells).isEqualTo(25);
+	}
+
+	@Test
+	public void testCellsViolatingConstraintsAreDroppedFromFailedBatch() {
+		Mockito.when(jdbcTemplate.batchUpdate(Matchers.anyString(), Matchers.<List<Object[]>>any()))
+				.thenThrow(new DataIntegrityViolationException("session was deleted"));
+		Mockito.when(jdbcTemplate.update(Matchers.anyString(), Matchers.<Object>anyVararg())).thenAnswer(invocation -> {
+			if (Integer.valueOf(1).equals(invocation.getArguments()[2])) {
+				throw new DataIntegrityViolationException("session was deleted");
+			}
+			return 1;
+		});
+		for (int i = 0; i < 3; i++) {
+			sessionCellWriter.append(session, i, "a = " + i);
+		}
+
+		assertThat(sessionCellWriter.flush()).isTrue();
+		assertThat(sessionCellWriter.flush()).isTrue();
+
+		// the batch is retried cell by cell once, the failing cell is not retried again
+		Mockito.verify(jdbcTemplate, Mockito.times(1)).batchUpdate(Matchers.anyString(),
+				Matchers.<List<Object[]>>any());
+		Mockito.verify(jdbcTemplate, Mockito.times(3)).update(Matchers.anyString(), Matchers.<Object>anyVararg());
+	}
+
+	@Test
+	public void testUnflushedCellsAreKeptUntilInserted() {
+		Mockito.when(jdbcTemplate.batchUpdate(Matchers.anyString(), Matchers.<List<Object[]>>any()))
+				.thenThrow(new DataAccessResourceFailureException("database is down")).thenReturn(new int[0]);
+		Mockito.when(jdbcTemplate.update(Matchers.anyString(), Matchers.<Object>anyVararg()))
+				.thenThrow(new DataAccessResourceFailureException("database is down"));
+		sessionCellWriter.append(session, 0, "a = 0");
+		sessionCellWriter.append(session, 1, "a = 1");
+
+		assertThat(sessionCellWriter.flush()).isFalse();
+		assertThat(sessionCellWriter.getUnflushedCells(159L)).containsEntry(0, "a = 0").containsEntry(1, "a = 1");
+
+		assertThat(sessionCellWriter.flush()).isTrue();
+		assertThat(sessionCellWriter.getUnflushedCells(159L)).isEmpty();
+	}
+
+	@Test
+	public void testPendingCellsAreFlushedOnShutdown() throws InterruptedException {
+		sessionCellWriter.append(session, 0, "a = 0");
+
+		sessionCellWriter.stopFlusher();
+
+		Mockito.verify(jdbcTemplate).batchUpdate(Matchers.anyString(), Matchers.<List<Object[]>>any());
+	}
+}
@@ -0,0 +1,170 @@
+package com.tahabasri.projects.notebookserver.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.models.entities.Session;
+import com.tahabasri.projects.notebookserver.repositories.InterpreterContextRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionCellRepository;
+import com.tahabasri.projects.notebookserver.repositories.SessionRepository;
+import com.tahabasri.projects.notebookserver.services.ExecutionService;
+import com.tahabasri.projects.notebookserver.services.SessionCache;
+import com.tahabasri.projects.notebookserver.services.SessionCellWriter;
+import com.tahabasri.projects.notebookserver.services.SessionEvictionImpl;
+import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterDescriptor;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
+
+public class SessionEvictionTest {
+
+	private SessionEvictionImpl sessionEviction;
+	private InterpreterContextRepository contextRepository;
+	private SessionRepository sessionRepository;
+	private SessionCellRepository sessionCellRepository;
+	private SessionCache sessionCache;
+	private InterpreterLookup interpreterLookup;
+	private Interpreter interpreter;
+	private InterpreterContext context;
+	private ExecutionService executionService;
+
+	@Before
+	public void setUp() {
+		contextRepository = Mockito.mock(InterpreterContextRepository.class);
+		sessionRepository = Mockito.mock(SessionRepository.class);
+		sessionCellRepository = Mockito.mock(SessionCellRepository.class);
+		sessionCache = Mockito.mock(SessionCache.class);
+		interpreterLookup = Mockito.mock(InterpreterLookup.class);
+		interpreter = Mockito.mock(Interpreter.class);
+		executionService = Mockito.mock(ExecutionService.class);
+		// sessions are idle : eviction runs right away
+		Mockito.when(executionService.runIfSessionIdle(Matchers.anyString(), Matchers.anyString(),
+				Matchers.any(Runnable.class))).thenAnswer(invocation -> {
+					((Runnable) invocation.getArguments()[2]).run();
+					return true;
+				});
+
+		context = new InterpreterContext("python", "pythonFullPath", null);
+		Mockito.when(contextRepository.findAll()).thenReturn(Collections.singletonList(context));
+		Mockito.when(interpreterLookup.getInterpreter(context)).thenReturn(interpreter);
+		describeInterpreter(new Properties());
+
+		sessionEviction = new SessionEvictionImpl();
+		ReflectionTestUtils.setField(sessionEviction, "contextRepository", contextRepository);
+		ReflectionTestUtils.setField(sessionEviction, "sessionRepository", sessionRepository);
+		ReflectionTestUtils.setField(sessionEviction, "sessionCellRepository", sessionCellRepository);
+		ReflectionTestUtils.setField(sessionEviction, "sessionCellWriter", new SessionCellWriter());
+		ReflectionTestUtils.setField(sessionEviction, "sessionCache", sessionCache);
+		ReflectionTestUtils.setField(sessionEviction, "interpreterLookup", interpreterLookup);
+		ReflectionTestUtils.setField(sessionEviction, "executionService", executionService);
+		ReflectionTestUtils.setField(sessionEviction, "transactionManager",
+				Mockito.mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(sessionEviction, "idleTimeout", 60000L);
+		ReflectionTestUtils.setField(sessionEviction, "maxSessions", 0);
+		// reaper is run by the tests only
+		ReflectionTestUtils.setField(sessionEviction, "interval", 0L);
+		sessionEviction.startReaper();
+	}
+
+	@After
+	public void tearDown() {
+		sessionEviction.stopReaper();
+	}
+
+	@Test
+	public void testIdleSessionIsEvicted() {
+		Session session = newSession(159L, 0L);
+		Mockito.when(sessionRepository.findByLastAccessTimeLessThan(Matchers.anyLong(), Matchers.any(Pageable.class)))
+				.thenReturn(Collections.singletonList(session), Collections.<Session>emptyList());
+
+		assertThat(sessionEviction.evictSessions()).isEqualTo(1);
+
+		Mockito.verify(sessionCellRepository).deleteBySessionId(159L);
+		Mockito.verify(sessionRepository).deleteSession(159L);
+		Mockito.verify(sessionCache).invalidateSession(context, 159L);
+		assertThat(session.getStateKey()).startsWith("159-");
+		Mockito.verify(interpreter).releaseSession(Matchers.any(InterpreterDescriptor.class),
+				Matchers.eq(session.getStateKey()));
+		assertThat(sessionEviction.getEvictedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testBusySessionIsNotEvicted() {
+		Session session = newSession(159L, 0L);
+		Mockito.when(sessionRepository.findByLastAccessTimeLessThan(Matchers.anyLong(), Matchers.any(Pageable.class)))
+				.thenReturn(Collections.singletonList(session));
+		Mockito.doReturn(false).when(executionService).runIfSessionIdle(Matchers.eq("python"), Matchers.eq("159"),
+				Matchers.any(Runnable.class));
+
+		assertThat(sessionEviction.evictSessions()).isZero();
+
+		Mockito.verify(sessionRepository, Mockito.never()).deleteSession(Matchers.anyLong());
+		Mockito.verify(sessionCache, Mockito.never()).invalidateSession(context, 159L);
+	}
+
+	@Test
+	public void testAccessTimesAreWrittenBeforeSearchingIdleSessions() {
+		Session session = newSession(159L, 0L);
+		sessionEviction.sessionAccessed(session);
+
+		assertThat(session.getLastAccessTime()).isPositive();
+		Mockito.when(sessionRepository.findByLastAccessTimeLessThan(Matchers.anyLong(), Matchers.any(Pageable.class)))
+				.thenReturn(Collections.<Session>emptyList());
+
+		assertThat(sessionEviction.evictSessions()).isZero();
+
+		Mockito.verify(sessionRepository).updateLastAccessTime(159L, session.getLastAccessTime());
+		Mockito.verify(sessionRepository, Mockito.never()).deleteSession(Matchers.anyLong());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedSessionsAreEvictedAboveInterpreterCap() {
+		Properties properties = new Properties();
+		properties.setProperty("interpreter.python.max-sessions", "2");
+		describeInterpreter(properties);
+		Mockito.when(sessionRepository.findByLastAccessTimeLessThan(Matchers.anyLong(), Matchers.any(Pageable.class)))
+				.thenReturn(Collections.<Session>emptyList());
+		Mockito.when(sessionRepository.countByContext(context)).thenReturn(4L);
+		Mockito.when(sessionRepository.findByContextOrderByLastAccessTimeAsc(Matchers.eq(context),
+				Matchers.any(Pageable.class))).thenReturn(Arrays.asList(newSession(1L, 10L), newSession(2L, 20L)));
+
+		assertThat(sessionEviction.evictSessions()).isEqualTo(2);
+
+		Mockito.verify(sessionRepository).deleteSession(1L);
+		Mockito.verify(sessionRepository).deleteSession(2L);
+		Mockito.verify(sessionRepository, Mockito.times(2)).deleteSession(Matchers.anyLong());
+	}
+
+	@Test
+	public void testSessionsAreKeptWithoutCap() {
+		ReflectionTestUtils.setField(sessionEviction, "idleTimeout", 0L);
+		Mockito.when(sessionRepository.countByContext(context)).thenReturn(100000L);
+
+		assertThat(sessionEviction.evictSessions()).isZero();
+
+		Mockito.verify(sessionRepository, Mockito.never()).deleteSession(Matchers.anyLong());
+	}
+
+	private void describeInterpreter(Properties properties) {
+		Mockito.when(interpreterLookup.getDescriptor(context))
+				.thenReturn(new InterpreterDescriptor(context, null, properties));
+	}
+
+	private Session newSession(Long id, long lastAccessTime) {
+		Session session = new Session(id, context, null);
+		session.setLastAccessTime(lastAccessTime);
+		return session;
+	}
+}
@@ -4,6 +4,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.io.File;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +17,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
 import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterDescriptor;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookupImpl;
 
@@ -75,4 +78,44 @@ public class InterpreterLookupTest {
 		String property = "interpreter.python.timeout";
 		assertNotNull(interpreterLookup.readPropertiesForInterpreter("python").getProperty(property));
 	}
+
+	@Test
+	public void testDescriptorIsResolvedOnce() {
+		String pythonExec = env.getProperty("default.interpreter.path");
+		InterpreterContext context = new InterpreterContext("python", pythonExec, null);
+
+		InterpreterDescriptor descriptor = interpreterLookup.getDescriptor(context);
+
+		assertThat(descriptor.hasImplementation()).isTrue();
+		assertThat(descriptor.getTimeout()).isEqualTo(Integer.parseInt(env.getProperty("interpreter.python.timeout")));
+		assertThat(descriptor.getSeparator()).isEqualTo(env.getProperty("interpreter.python.separator"));
+		assertThat(interpreterLookup.getDescriptor(context)).isSameAs(descriptor);
+	}
+
+	@Test
+	public void testDescriptorIsResolvedAgainWhenContextChanges() {
+		InterpreterDescriptor descriptor = interpreterLookup
+				.getDescriptor(new InterpreterContext("python", "pythonBadFullPath", null));
+
+		InterpreterDescriptor newDescriptor = interpreterLookup
+				.getDescriptor(new InterpreterContext("python", "otherPythonBadFullPath", null));
+
+		assertThat(newDescriptor).isNotSameAs(descriptor);
+		assertThat(newDescriptor.getInterpreterPath()).isEqualTo("otherPythonBadFullPath");
+	}
+
+	@Test
+	public void testInterpreterIsReplacedWhenContextChanges() {
+		// the stub launches no process, its executor only has to exist
+		File javaHome = new File(System.getProperty("java.home"));
+		InterpreterContext context = new InterpreterContext("stub", new File(javaHome, "bin/java").getPath(), null);
+		InterpreterContext newContext = new InterpreterContext("stub", new File(javaHome, "bin").getPath(), null);
+
+		Interpreter interpreter = interpreterLookup.getInterpreter(context);
+		Interpreter newInterpreter = interpreterLookup.getInterpreter(newContext);
+
+		assertNotNull(interpreter);
+		assertThat(newInterpreter).isNotNull().isNotSameAs(interpreter);
+		assertThat(interpreterLookup.getInterpreter(newContext)).isSameAs(newInterpreter);
+	}
 }
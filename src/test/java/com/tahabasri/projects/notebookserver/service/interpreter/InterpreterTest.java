@@ -1,7 +1,10 @@
 package com.tahabasri.projects.notebookserver.service.interpreter;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Properties;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +18,7 @@ import com.tahabasri.projects.notebookserver.models.ExecutionResult;
 import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
 import com.tahabasri.projects.notebookserver.models.UserRequestInput;
 import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.services.interpreter.ExecutionContext;
 import com.tahabasri.projects.notebookserver.services.interpreter.Interpreter;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookup;
 import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterLookupImpl;
@@ -45,15 +49,38 @@ public class InterpreterTest {
 
 		Interpreter interpreter = interpreterLookup.getInterpreter(context);
 
-		interpreter.setProperties(interpreterLookup.readPropertiesForInterpreter(context.getInterpreterName()));
+		ExecutionContext executionContext = new ExecutionContext(context,
+				interpreterLookup.readPropertiesForInterpreter(context.getInterpreterName()), null);
 
 		UserRequestInput userRequestInput = new UserRequestInput("%python print (1+1)", "");
 		InterpretationRequest interpretationRequest = new InterpretationRequest(userRequestInput);
 
 		ExecutionResult result = new ExecutionResult();
-		boolean interpretation = interpreter.interpret(interpretationRequest, context, result);
+		boolean interpretation = interpreter.interpret(interpretationRequest, executionContext, result);
+
+		assertTrue(interpretation);
+	}
+
+	@Test
+	public void testInterpretPythonCodeWithQuotesInProcessMode() {
+		String pythonExec = env.getProperty("default.interpreter.path");
+		InterpreterContext context = new InterpreterContext("python", pythonExec, null);
+
+		Interpreter interpreter = interpreterLookup.getInterpreter(context);
+
+		Properties properties = interpreterLookup.readPropertiesForInterpreter(context.getInterpreterName());
+		properties.setProperty("interpreter.python.mode", "process");
+		ExecutionContext executionContext = new ExecutionContext(context, properties, null);
+
+		// code is sent as is, double quotes must not be rewritten
+		UserRequestInput userRequestInput = new UserRequestInput("%python print (\"it's\" + '\"ok\"')", "");
+		InterpretationRequest interpretationRequest = new InterpretationRequest(userRequestInput);
+
+		ExecutionResult result = new ExecutionResult();
+		boolean interpretation = interpreter.interpret(interpretationRequest, executionContext, result);
 
 		assertTrue(interpretation);
+		assertThat(result.getResultContent()).isEqualTo("it's\"ok\"");
 	}
 
 }
@@ -0,0 +1,76 @@
+package com.tahabasri.projects.notebookserver.service.interpreter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tahabasri.projects.notebookserver.models.ExecutionResult;
+import com.tahabasri.projects.notebookserver.models.InterpretationRequest;
+import com.tahabasri.projects.notebookserver.models.UserRequestInput;
+import com.tahabasri.projects.notebookserver.models.entities.InterpreterContext;
+import com.tahabasri.projects.notebookserver.services.interpreter.ExecutionContext;
+import com.tahabasri.projects.notebookserver.services.interpreter.InterpreterDescriptor;
+import com.tahabasri.projects.notebookserver.services.interpreter.StubInterpreter;
+
+public class StubInterpreterTest {
+
+	private StubInterpreter interpreter;
+	private ExecutionContext executionContext;
+
+	@Before
+	public void setUp() {
+		// the stub launches no process, its executor only has to exist
+		InterpreterContext context = new InterpreterContext("stub",
+				new File(System.getProperty("java.home"), "bin/java").getPath(), null);
+		Properties properties = new Properties();
+		properties.setProperty("interpreter.stub.timeout", "200");
+
+		interpreter = new StubInterpreter(context);
+		executionContext = new ExecutionContext(new InterpreterDescriptor(context, null, properties), null);
+	}
+
+	private ExecutionResult interpret(String code) {
+		ExecutionResult result = new ExecutionResult();
+		interpreter.interpret(new InterpretationRequest(new UserRequestInput("%stub " + code, null)),
+				executionContext, result);
+		return result;
+	}
+
+	@Test
+	public void testCodeIsEchoed() {
+		ExecutionResult result = interpret("print(1)");
+
+		assertThat(result.getResultType()).isEqualTo(ExecutionResult.RESULT_OK);
+		assertThat(result.getResultContent()).isEqualTo("print(1)");
+	}
+
+	@Test
+	public void testAssignmentHasNoOutput() {
+		assertThat(interpret("a = 1").getResultContent()).isEmpty();
+		assertThat(interpret("a == 1").getResultContent()).isEqualTo("a == 1");
+	}
+
+	@Test
+	public void testSleepLongerThanTimeoutFails() {
+		assertThat(interpret("sleep 10").getResultType()).isEqualTo(ExecutionResult.RESULT_OK);
+		assertThat(interpret("sleep 1000").getResultType()).isEqualTo(ExecutionResult.RESULT_ERROR);
+	}
+
+	@Test
+	public void testDefaultBatchInterpretsCellsInOrder() {
+		List<ExecutionResult> results = interpreter.interpretBatch(Arrays.asList("a = 1", "a", "sleep 1000", "b"),
+				executionContext, true);
+
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getResultContent()).isEmpty();
+		assertThat(results.get(1).getResultContent()).isEqualTo("a");
+		assertThat(results.get(2).getResultType()).isEqualTo(ExecutionResult.RESULT_ERROR);
+		assertThat(interpreter.interpretBatch(Arrays.asList("sleep 1000", "b"), executionContext, false)).hasSize(2);
+	}
+}